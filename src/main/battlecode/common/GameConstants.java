@@ -29,6 +29,9 @@ public interface GameConstants {
     /** The bytecode penalty that is imposed each time an exception is thrown */
     public static final int EXCEPTION_BYTECODE_PENALTY = 500;
     
+    /** The bytecode cost of each RobotInfo returned by senseRobotInfos and senseNearbyRobotInfos, on top of the cost of the call */
+    public static final int ROBOT_INFO_BYTECODE_COST = 10;
+    
     /** The number of indicator strings that a player can associate with a robot */
     public static final int NUMBER_OF_INDICATOR_STRINGS = 3;
     
@@ -125,6 +125,25 @@ public interface RobotController {
      */
     public RobotInfo senseRobotInfo(Robot r) throws GameActionException;
 
+    /**
+     * Sense the RobotInfo for each of the given robots, in the same order.
+     * On top of the cost of the call, this costs
+     * <code>GameConstants.ROBOT_INFO_BYTECODE_COST</code> bytecodes per robot.
+     *
+     * @throws GameActionException if any of the robots is not within sensor range (CANT_SENSE_THAT)
+     */
+    public RobotInfo[] senseRobotInfos(Robot[] robots) throws GameActionException;
+
+    /**
+     * Senses the RobotInfo for every robot that
+     * <code>senseNearbyGameObjects(Robot.class, radiusSquared, team)</code> would return, in the same order.
+     * On top of the cost of the call, this costs
+     * <code>GameConstants.ROBOT_INFO_BYTECODE_COST</code> bytecodes per robot found.
+     * @param radiusSquared - return robots this distance away from the robot
+     * @param team - filter robots by the given team. If null is passed, robots from all teams are returned
+     */
+    public RobotInfo[] senseNearbyRobotInfos(int radiusSquared, Team team);
+
     /**
      * @return true if the given object is within the team's shared sensor range
      */
@@ -12,6 +12,7 @@ TODO:
 public class PlayerFactory {
 
     private static boolean _debugMethodsEnabled = false;
+    private static boolean[] _silenced = new boolean[2];
 
     private PlayerFactory() {
     }
@@ -19,6 +20,9 @@ public class PlayerFactory {
     public static void checkOptions() {
         Config options = Config.getGlobalConfig();
         _debugMethodsEnabled = options.getBoolean("bc.engine.debug-methods");
+        boolean elide = options.getBoolean("bc.engine.silence-elide");
+        _silenced[0] = elide && options.getBoolean("bc.engine.silence-a");
+        _silenced[1] = elide && options.getBoolean("bc.engine.silence-b");
     }
 
     public static void loadPlayer(GenericController rc, String teamName) {
@@ -26,8 +30,11 @@ public class PlayerFactory {
         // now, we instantiate and instrument the player's class
         Class playerClass;
         try {
-            // The classloaders ignore silenced now - RobotMonitor takes care of it
-            ClassLoader icl = new IndividualClassLoader(teamName, _debugMethodsEnabled, false);
+            // RobotMonitor takes care of silencing output.  The classloader only uses
+            // silenced to strip out print calls, if bc.engine.silence-elide is set.
+            int team = rc.getRobot().getTeam().ordinal();
+            boolean silenced = team < _silenced.length && _silenced[team];
+            ClassLoader icl = new IndividualClassLoader(teamName, _debugMethodsEnabled, silenced);
             playerClass = icl.loadClass(teamName + ".RobotPlayer");
             //~ System.out.println("PF done loading");
         } catch (InstrumentationException ie) {
@@ -0,0 +1,196 @@
+package battlecode.engine.instrumenter;
+
+import battlecode.common.Team;
+import battlecode.server.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how much CPU time robots use per bytecode they are charged for.  If
+ * a robot's CPU time per bytecode is much higher than everyone else's, then it is
+ * probably calling a method that MethodCosts.txt underprices.
+ * <p/>
+ * RobotMonitor tells the profiler when each turn starts and ends.  When profiling
+ * is enabled, RoboMethodTree also wraps every call into battlecode.common with
+ * calls to enterApi and exitApi, so that we can tell which engine methods are
+ * the expensive ones.
+ * <p/>
+ * Profiling is turned on with bc.engine.cpu-profile.
+ */
+public class CpuProfiler {
+
+    /**
+     * CPU time and bytecodes used by a robot, a team, or an engine method.
+     */
+    private static class Usage {
+        final String name;
+        long cpuNanos;
+        long bytecodes;
+        int count;
+
+        Usage(String name) {
+            this.name = name;
+        }
+
+        void add(long cpuNanos, long bytecodes) {
+            this.cpuNanos += cpuNanos;
+            this.bytecodes += bytecodes;
+            count++;
+        }
+
+        double nanosPerBytecode() {
+            return bytecodes == 0 ? cpuNanos : (double) cpuNanos / bytecodes;
+        }
+    }
+
+    private static final Comparator<Usage> byNanosPerBytecode = new Comparator<Usage>() {
+        public int compare(Usage a, Usage b) {
+            return Double.compare(b.nanosPerBytecode(), a.nanosPerBytecode());
+        }
+    };
+
+    private static final Comparator<Usage> byCpuTime = new Comparator<Usage>() {
+        public int compare(Usage a, Usage b) {
+            return a.cpuNanos < b.cpuNanos ? 1 : (a.cpuNanos == b.cpuNanos ? 0 : -1);
+        }
+    };
+
+    // how many robots and methods to list in the report
+    private static final int REPORT_SIZE = 10;
+
+    private static boolean enabled;
+    private static ThreadMXBean threadBean;
+
+    private static final Map<Integer, Usage> robots = new HashMap<Integer, Usage>();
+    private static final Map<Team, Usage> teams = new HashMap<Team, Usage>();
+    private static final Map<String, Usage> methods = new HashMap<String, Usage>();
+
+    private static long turnStart;
+
+    // the engine method that the current robot is in, or null
+    private static String apiMethod;
+    private static long apiStart;
+
+    private CpuProfiler() {
+    }
+
+    /**
+     * Reads the configuration and clears all of the data.  Should be called between games.
+     */
+    public static void reset() {
+        robots.clear();
+        teams.clear();
+        methods.clear();
+        apiMethod = null;
+        threadBean = ManagementFactory.getThreadMXBean();
+        enabled = Config.getGlobalConfig().getBoolean("bc.engine.cpu-profile");
+        if (enabled && !threadBean.isCurrentThreadCpuTimeSupported()) {
+            System.out.println("[Engine] This JVM can't measure thread CPU time; CPU profiling is disabled.");
+            enabled = false;
+        }
+        if (enabled)
+            threadBean.setThreadCpuTimeEnabled(true);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called by RobotMonitor when a robot starts its turn.
+     */
+    public static void startTurn() {
+        if (!enabled)
+            return;
+        apiMethod = null;
+        turnStart = threadBean.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * Called by RobotMonitor when a robot ends its turn.
+     */
+    public static void endTurn(int robotID, Team team, int bytecodesUsed) {
+        if (!enabled)
+            return;
+        long nanos = threadBean.getCurrentThreadCpuTime() - turnStart;
+        // a yield or a call that throws leaves apiMethod set, and we can't
+        // tell how much of the time was spent in the method
+        apiMethod = null;
+        Usage robot = robots.get(robotID);
+        if (robot == null) {
+            robot = new Usage(team + " robot " + robotID);
+            robots.put(robotID, robot);
+        }
+        robot.add(nanos, bytecodesUsed);
+        Usage teamUsage = teams.get(team);
+        if (teamUsage == null) {
+            teamUsage = new Usage("team " + team);
+            teams.put(team, teamUsage);
+        }
+        teamUsage.add(nanos, bytecodesUsed);
+    }
+
+    /**
+     * Called by instrumented code just before calling an engine method.
+     *
+     * @param method the name of the method, e.g. "RobotController.senseNearbyGameObjects"
+     */
+    public static void enterApi(String method) {
+        apiMethod = method;
+        apiStart = threadBean.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * Called by instrumented code just after an engine method returns.
+     */
+    public static void exitApi() {
+        if (apiMethod == null)
+            return;
+        long nanos = threadBean.getCurrentThreadCpuTime() - apiStart;
+        Usage usage = methods.get(apiMethod);
+        if (usage == null) {
+            usage = new Usage(apiMethod);
+            methods.put(apiMethod, usage);
+        }
+        MethodCostUtil.MethodData data = MethodCostUtil.getMethodData(
+                "battlecode/common/" + apiMethod.substring(0, apiMethod.indexOf('.')),
+                apiMethod.substring(apiMethod.indexOf('.') + 1));
+        usage.add(nanos, data == null ? 0 : data.cost + 1);
+        apiMethod = null;
+    }
+
+    /**
+     * Returns a human-readable report of the data collected during this game.
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("CPU time per bytecode by team:\n");
+        List<Usage> list = new ArrayList<Usage>(teams.values());
+        Collections.sort(list, byNanosPerBytecode);
+        appendUsage(sb, list, list.size());
+        sb.append("Robots with the most CPU time per bytecode:\n");
+        list = new ArrayList<Usage>(robots.values());
+        Collections.sort(list, byNanosPerBytecode);
+        appendUsage(sb, list, REPORT_SIZE);
+        sb.append("Engine methods with the most total CPU time (bytecodes = charged cost):\n");
+        list = new ArrayList<Usage>(methods.values());
+        Collections.sort(list, byCpuTime);
+        appendUsage(sb, list, REPORT_SIZE);
+        return sb.toString();
+    }
+
+    private static void appendUsage(StringBuilder sb, List<Usage> list, int max) {
+        for (int i = 0; i < list.size() && i < max; i++) {
+            Usage u = list.get(i);
+            sb.append(String.format("  %-45s %8.1f ns/bytecode %12d ns %10d bytecodes %8d samples\n",
+                    u.name, u.nanosPerBytecode(), u.cpuNanos, u.bytecodes, u.count));
+        }
+    }
+}
@@ -83,8 +83,8 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
 
             //System.out.println("loadClass "+name);
 
-            if (instrumentedClasses.containsKey(name)) {
-                byte[] classBytes = instrumentedClasses.get(name);
+            if (instrumentedClasses.containsKey(cacheKey(name))) {
+                byte[] classBytes = instrumentedClasses.get(cacheKey(name));
                 finishedClass = defineClass(null, classBytes, 0, classBytes.length);
             } else if (name.equals("battlecode/engine/instrumenter/lang/ObjectHashCode") ||
                     name.equals("battlecode/engine/instrumenter/lang/InstrumentableFunctions")) {
@@ -108,6 +108,10 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
                     //dumpToFile(name,classBytes);
                 } catch (InstrumentationException ie) {
                     teamsWithErrors.add(teamPackageName);
+                    // the body of a lazy method gets loaded while the robot is running,
+                    // so kill it the same way as for illegal code in lazy mode
+                    if (LazyMethods.isBodyClass(name))
+                        throw new RobotDeathException();
                     throw ie;
                 }
 
@@ -153,9 +157,15 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
             throw new InstrumentationException();
         }
         Class<?> theClass = defineClass(null, classBytes, 0, classBytes.length);
-        instrumentedClasses.put(name, classBytes);
+        instrumentedClasses.put(cacheKey(name), classBytes);
         return theClass;
 
     }
 
+    // silenced classes have their print calls stripped, so they can't share
+    // a cache entry with the normal version of the same class
+    private String cacheKey(String name) {
+        return silenced ? "silenced/" + name : name;
+    }
+
 }
@@ -7,17 +7,20 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 
 import java.io.IOException;
+import java.util.Map;
 
 import static org.objectweb.asm.ClassWriter.COMPUTE_MAXS;
 
 public abstract class InstrumentingClassLoader extends ClassLoader {
 
-    // silenced is not used any more
+    // if silenced is set, print calls are stripped out during instrumentation
     protected final boolean silenced;
     protected final boolean debugMethodsEnabled;
 
     private static boolean lazy;
     private static boolean fastHash;
+    private static boolean lazyMethods;
+    private static boolean streamingInstrumenter;
     private static boolean checkedSettings;
 
     /**
@@ -52,12 +55,41 @@ public abstract class InstrumentingClassLoader extends ClassLoader {
         return fastHash;
     }
 
+    /**
+     * Returns the value of the property bc.engine.lazy-methods.
+     * If lazy-methods is set, then large static methods in players' classes
+     * are only instrumented the first time they are called.  This saves time
+     * and memory for teams with lots of code that never runs.
+     * <p/>
+     * {@see LazyMethods}
+     */
+    public static boolean lazyMethods() {
+        return lazyMethods;
+    }
+
+    /**
+     * Returns the value of the property bc.engine.streaming-instrumenter.
+     * If streaming-instrumenter is set, then methods are instrumented in a single
+     * pass by RoboMethodAdapter instead of building a RoboMethodTree for each one.
+     * The instrumented classes should be the same either way, and
+     * StreamingInstrumenterTest checks this on a sample player and the engine
+     * and library classes, but this is off by default until it has also been
+     * checked against a corpus of real players.
+     * <p/>
+     * {@see RoboAdapter#visitMethod}
+     */
+    public static boolean streamingInstrumenter() {
+        return streamingInstrumenter;
+    }
+
     protected static void checkSettings() {
         if (!checkedSettings) {
             checkedSettings = true;
             Config config = Config.getGlobalConfig();
             lazy = config.getBoolean("bc.engine.lazy-instrumenter");
             fastHash = config.getBoolean("bc.engine.fast-hash");
+            lazyMethods = config.getBoolean("bc.engine.lazy-methods");
+            streamingInstrumenter = config.getBoolean("bc.engine.streaming-instrumenter");
         }
     }
 
@@ -75,6 +107,11 @@ public abstract class InstrumentingClassLoader extends ClassLoader {
 
     public byte[] instrument(String className, boolean checkDisallowed, String teamPackageName) throws InstrumentationException {
         //System.out.println("instrumenting "+className+", checkDisallowed "+checkDisallowed);
+        if (LazyMethods.isBodyClass(className)) {
+            ClassWriter cw = new ClassWriter(COMPUTE_MAXS);
+            LazyMethods.createBodyClass(className).accept(new RoboAdapter(cw, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed));
+            return cw.toByteArray();
+        }
         ClassReader cr;
         try {
             if (className.startsWith("instrumented/"))
@@ -86,7 +123,10 @@ public abstract class InstrumentingClassLoader extends ClassLoader {
             throw new InstrumentationException();
         }
         ClassWriter cw = new ClassWriter(COMPUTE_MAXS); // passing true sets maxLocals and maxStack, so we don't have to
-        ClassVisitor cv = new RoboAdapter(cw, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
+        Map<String, String> lazy = null;
+        if (lazyMethods && checkDisallowed)
+            lazy = LazyMethods.findLazyMethods(cr);
+        ClassVisitor cv = new RoboAdapter(cw, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed, lazy);
         cr.accept(cv, 0);        //passing false lets debug info be included in the transformation, so players get line numbers in stack traces
         byte[] bytes = cw.toByteArray();
         return bytes;
@@ -0,0 +1,143 @@
+package battlecode.engine.instrumenter;
+
+import battlecode.engine.ErrorReporter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Supports lazy instrumentation of large static methods.
+ * <p/>
+ * The JVM won't let us replace a method's body after its class has been defined, so
+ * instead each lazy method is moved into a class of its own, named
+ * <code>Outer$$lazy$n</code>, and the original method becomes a trampoline that calls
+ * it.  The JVM only loads that class, and so we only instrument the method, the first
+ * time the trampoline runs.  The trampolines aren't instrumented, and the body is
+ * instrumented exactly as it would have been in place, so robots are charged the same
+ * number of bytecodes either way.
+ * <p/>
+ * A method is only moved if it is static, reasonably large, and its class extends
+ * Object directly.  It must also not use any private members of its class, because
+ * the new class can't see them.  Recursive calls inside the body go straight to the
+ * moved copy, so recursion doesn't use extra stack frames.
+ * <p/>
+ * Like bc.engine.lazy-instrumenter, this means illegal code in a method is only
+ * reported if the method is called.
+ */
+class LazyMethods implements Opcodes {
+
+    static final String MARKER = "$$lazy$";
+
+    // smaller methods aren't worth a class of their own
+    static final int MIN_INSTRUCTIONS = 100;
+
+    private LazyMethods() {
+    }
+
+    static boolean isBodyClass(String className) {
+        return className.contains(MARKER);
+    }
+
+    /**
+     * Finds the methods of a class that should be instrumented lazily.
+     *
+     * @return a map from name + desc of each lazy method to the class that will hold its body
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, String> findLazyMethods(ClassReader cr) {
+        ClassNode cn = new ClassNode();
+        cr.accept(cn, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        Map<String, String> lazy = new HashMap<String, String>();
+        if ((cn.access & ACC_INTERFACE) != 0 || !"java/lang/Object".equals(cn.superName))
+            return lazy;
+
+        Set<String> privateMembers = new HashSet<String>();
+        Set<String> members = new HashSet<String>();
+        for (FieldNode f : (List<FieldNode>) cn.fields) {
+            members.add(f.name);
+            if ((f.access & ACC_PRIVATE) != 0)
+                privateMembers.add(f.name);
+        }
+        for (MethodNode m : (List<MethodNode>) cn.methods) {
+            members.add(m.name + m.desc);
+            if ((m.access & ACC_PRIVATE) != 0)
+                privateMembers.add(m.name + m.desc);
+        }
+
+        List<MethodNode> methods = (List<MethodNode>) cn.methods;
+        for (int i = 0; i < methods.size(); i++) {
+            MethodNode m = methods.get(i);
+            if ((m.access & (ACC_STATIC | ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE)) != ACC_STATIC
+                    || m.name.equals("<clinit>") || m.instructions.size() < MIN_INSTRUCTIONS)
+                continue;
+            if (canMove(cn.name, m, members, privateMembers))
+                lazy.put(m.name + m.desc, cn.name + MARKER + i);
+        }
+        return lazy;
+    }
+
+    private static boolean canMove(String owner, MethodNode m, Set<String> members, Set<String> privateMembers) {
+        for (AbstractInsnNode n = m.instructions.getFirst(); n != null; n = n.getNext()) {
+            String key;
+            if (n instanceof FieldInsnNode && ((FieldInsnNode) n).owner.equals(owner))
+                key = ((FieldInsnNode) n).name;
+            else if (n instanceof MethodInsnNode && ((MethodInsnNode) n).owner.equals(owner))
+                key = ((MethodInsnNode) n).name + ((MethodInsnNode) n).desc;
+            else
+                continue;
+            // inherited members might be protected, so leave those alone too
+            if (privateMembers.contains(key) || !members.contains(key))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds the class that holds the body of a lazy method.
+     *
+     * @param bodyClassName a name returned by findLazyMethods
+     */
+    @SuppressWarnings("unchecked")
+    static ClassNode createBodyClass(String bodyClassName) throws InstrumentationException {
+        int marker = bodyClassName.lastIndexOf(MARKER);
+        String outerName = bodyClassName.substring(0, marker);
+        int index = Integer.parseInt(bodyClassName.substring(marker + MARKER.length()));
+
+        ClassReader cr;
+        try {
+            cr = new ClassReader(outerName);
+        } catch (IOException ioe) {
+            ErrorReporter.report("Can't find the class \"" + outerName + "\"", "Make sure the .class files are in the right directory (teams/teamname/*.class)");
+            throw new InstrumentationException();
+        }
+        ClassNode outer = new ClassNode();
+        cr.accept(outer, 0);
+        MethodNode m = (MethodNode) outer.methods.get(index);
+
+        // call the moved copy directly when the method calls itself
+        for (AbstractInsnNode n = m.instructions.getFirst(); n != null; n = n.getNext()) {
+            if (n.getOpcode() == INVOKESTATIC) {
+                MethodInsnNode call = (MethodInsnNode) n;
+                if (call.owner.equals(outerName) && call.name.equals(m.name) && call.desc.equals(m.desc))
+                    call.owner = bodyClassName;
+            }
+        }
+        m.access = (m.access & ~(ACC_PRIVATE | ACC_PROTECTED)) | ACC_PUBLIC;
+
+        ClassNode body = new ClassNode();
+        body.version = outer.version;
+        body.access = ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC;
+        body.name = bodyClassName;
+        body.superName = "java/lang/Object";
+        body.sourceFile = outer.sourceFile;
+        body.methods.add(m);
+        return body;
+    }
+}
@@ -86,6 +86,10 @@ public class MethodCostUtil {
         if (methodCosts.containsKey(key))
             return methodCosts.get(key);
 
+        // there's no class file for these, and they don't implement anything
+        if (LazyMethods.isBodyClass(className))
+            return null;
+
         String[] interfaces = null;
         if (interfacesMap.containsKey(className))
             interfaces = interfacesMap.get(className);
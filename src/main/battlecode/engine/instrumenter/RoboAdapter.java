@@ -2,6 +2,8 @@ package battlecode.engine.instrumenter;
 
 import org.objectweb.asm.*;
 
+import java.util.Map;
+
 /**
  * Instruments a class.  See InstrumenterASMImpl for more info on what this instrumentation does.
  *
@@ -18,6 +20,9 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
     // don't check those.
     private final boolean checkDisallowed;
 
+    // methods to replace with trampolines, see LazyMethods
+    private final Map<String, String> lazyMethods;
+
     /**
      * Creates a RoboAdapter to instrument a given class.
      *
@@ -27,11 +32,22 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
      * @param silenced            whether System.out should be silenced for this class
      */
     public RoboAdapter(final ClassVisitor cv, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed) {
+        this(cv, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed, null);
+    }
+
+    /**
+     * Creates a RoboAdapter that replaces some methods with trampolines to classes that will be instrumented later.
+     *
+     * @param lazyMethods a map from name + desc of each lazy method to the class holding its body, as returned by
+     *                    LazyMethods.findLazyMethods
+     */
+    public RoboAdapter(final ClassVisitor cv, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed, Map<String, String> lazyMethods) {
         super(cv);
         this.teamPackageName = teamPackageName;
         this.debugMethodsEnabled = debugMethodsEnabled;
         this.silenced = silenced;
         this.checkDisallowed = checkDisallowed;
+        this.lazyMethods = lazyMethods;
     }
 
     /**
@@ -79,14 +95,43 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
                 exceptions[i] = ClassReferenceUtil.classReference(exceptions[i], teamPackageName, silenced, checkDisallowed);
             }
         }
+        String newDesc = ClassReferenceUtil.methodDescReference(desc, teamPackageName, silenced, checkDisallowed);
         MethodVisitor mv = cv.visitMethod(access,
                 name,
-                ClassReferenceUtil.methodDescReference(desc, teamPackageName, silenced, checkDisallowed),
+                newDesc,
                 ClassReferenceUtil.methodSignatureReference(signature, teamPackageName, silenced, checkDisallowed),
                 exceptions);
-        // create a new RoboMethodAdapter, and let it loose on this method
-        //return mv == null ? null : new RoboMethodAdapter(mv, className, name, desc, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
-        return mv == null ? null : new RoboMethodTree(mv, className, access, name, desc, signature, exceptions, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
+        if (lazyMethods != null && lazyMethods.containsKey(name + desc)) {
+            if (mv != null)
+                writeTrampoline(mv, lazyMethods.get(name + desc), name, newDesc);
+            // skip the original body
+            return null;
+        }
+        if (mv == null)
+            return null;
+        // debug methods get wrapped in a handler, and print elision has to look
+        // ahead, so those need the whole method tree
+        boolean needsTree = silenced || (name.startsWith("debug_") && desc.endsWith("V"));
+        if (InstrumentingClassLoader.streamingInstrumenter() && !needsTree)
+            return new RoboMethodAdapter(mv, className, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
+        return new RoboMethodTree(mv, className, access, name, desc, signature, exceptions, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
+    }
+
+    /**
+     * Writes a method that passes its arguments on to the static method with the same name in
+     * bodyClass.  The trampoline isn't instrumented, so it doesn't cost the robot anything.
+     */
+    private static void writeTrampoline(MethodVisitor mv, String bodyClass, String name, String desc) {
+        mv.visitCode();
+        int local = 0;
+        for (Type t : Type.getArgumentTypes(desc)) {
+            mv.visitVarInsn(t.getOpcode(ILOAD), local);
+            local += t.getSize();
+        }
+        mv.visitMethodInsn(INVOKESTATIC, bodyClass, name, desc);
+        mv.visitInsn(Type.getReturnType(desc).getOpcode(IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
     }
 
     /**
@@ -0,0 +1,393 @@
+package battlecode.engine.instrumenter;
+
+// A streaming version of RoboMethodTree.  RoboMethodTree builds the whole
+// instruction list for every method before rewriting it, which is slow and
+// allocates a lot for big classes.  This class makes the same changes in a
+// single pass, and must produce exactly the same output.  Methods that need
+// to see the whole method first (debug_ methods, and print elision for
+// silenced teams) still go through RoboMethodTree; see RoboAdapter.
+
+import battlecode.common.GameConstants;
+import battlecode.engine.ErrorReporter;
+import org.objectweb.asm.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class RoboMethodAdapter extends MethodAdapter implements Opcodes {
+
+    private final String teamPackageName;
+    private final String className;    // the class to which this method belongs
+    private final boolean debugMethodsEnabled;
+    private final boolean silenced;
+    private final boolean checkDisallowed;
+
+    // all the exception handlers we've seen in the code
+    private final Set<Label> exceptionHandlers = new HashSet<Label>();
+
+    private final Label startLabel = new Label();
+    private final Label robotDeathLabel = new Label();
+    private boolean codeStarted = false;
+    private boolean anyTryCatch = false;
+
+    private int bytecodeCtr = 0;
+
+    private final boolean usingFastHash;
+
+    public RoboMethodAdapter(final MethodVisitor mv, final String className, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed) {
+        super(mv);
+        this.teamPackageName = teamPackageName;
+        this.className = className;
+        this.debugMethodsEnabled = debugMethodsEnabled;
+        this.silenced = silenced;
+        this.checkDisallowed = checkDisallowed;
+        usingFastHash = Boolean.getBoolean(battlecode.server.Config.getGlobalConfig().get("bc.server.fast-hash"));
+    }
+
+    protected String classReference(String name) {
+        return ClassReferenceUtil.classReference(name, teamPackageName, silenced, checkDisallowed);
+    }
+
+    protected String classDescReference(String name) {
+        return ClassReferenceUtil.classDescReference(name, teamPackageName, silenced, checkDisallowed);
+    }
+
+    protected String methodDescReference(String name) {
+        return ClassReferenceUtil.methodDescReference(name, teamPackageName, silenced, checkDisallowed);
+    }
+
+    protected String fieldSignatureReference(String name) {
+        return ClassReferenceUtil.fieldSignatureReference(name, teamPackageName, silenced, checkDisallowed);
+    }
+
+    /**
+     * RoboMethodTree puts startLabel in front of everything else, so we have to
+     * call this before passing on any code.
+     */
+    private void startCode() {
+        if (!codeStarted) {
+            codeStarted = true;
+            mv.visitLabel(startLabel);
+        }
+    }
+
+    private void endOfBasicBlock() {
+        if (bytecodeCtr == 0)
+            return;
+        mv.visitLdcInsn(new Integer(bytecodeCtr));
+        mv.visitMethodInsn(INVOKESTATIC, "battlecode/engine/instrumenter/RobotMonitor", "incrementBytecodes", "(I)V");
+        bytecodeCtr = 0;
+    }
+
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        if (codeStarted) {
+            // ClassReader always gives us the try/catch blocks first
+            ErrorReporter.report("Try/catch block for " + className + " visited after the code", true);
+            throw new InstrumentationException();
+        }
+        if (!anyTryCatch) {
+            // the robot death handler has to come before anything that might catch it
+            anyTryCatch = true;
+            mv.visitTryCatchBlock(startLabel, robotDeathLabel, robotDeathLabel, "java/lang/VirtualMachineError");
+        }
+        exceptionHandlers.add(handler);
+        mv.visitTryCatchBlock(start, end, handler, type == null ? null : classReference(type));
+    }
+
+    public void visitLabel(Label label) {
+        startCode();
+        endOfBasicBlock();
+        mv.visitLabel(label);
+        if (exceptionHandlers.contains(label))
+            bytecodeCtr += GameConstants.EXCEPTION_BYTECODE_PENALTY;
+    }
+
+    public void visitLineNumber(int line, Label start) {
+        startCode();
+        mv.visitLineNumber(line, start);
+    }
+
+    private Object[] replaceVars(int n, Object[] l) {
+        if (l == null)
+            return null;
+        Object[] ans = new Object[n];
+        for (int i = 0; i < n; i++) {
+            ans[i] = (l[i] instanceof String) ? classReference((String) l[i]) : l[i];
+        }
+        return ans;
+    }
+
+    public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+        startCode();
+        mv.visitFrame(type, nLocal, replaceVars(nLocal, local), nStack, replaceVars(nStack, stack));
+    }
+
+    public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        startCode();
+        bytecodeCtr++;
+        mv.visitFieldInsn(opcode, classReference(owner), name, classDescReference(desc));
+    }
+
+    public void visitInsn(int opcode) {
+        startCode();
+        bytecodeCtr++;
+        switch (opcode) {
+            case IRETURN:
+            case LRETURN:
+            case FRETURN:
+            case DRETURN:
+            case ARETURN:
+            case RETURN:
+            case ATHROW:
+                endOfBasicBlock();
+                break;
+            case MONITORENTER:
+            case MONITOREXIT:
+                if (checkDisallowed) {
+                    ErrorReporter.report("synchronized() may not be used by a player.", false);
+                    throw new InstrumentationException();
+                }
+                // We need to strip these so we don't leave monitors locked when a robot dies
+                opcode = POP;
+                break;
+        }
+        mv.visitInsn(opcode);
+    }
+
+    public void visitIntInsn(int opcode, int operand) {
+        startCode();
+        bytecodeCtr++;
+        mv.visitIntInsn(opcode, operand);
+    }
+
+    public void visitIincInsn(int var, int increment) {
+        startCode();
+        bytecodeCtr++;
+        mv.visitIincInsn(var, increment);
+    }
+
+    public void visitVarInsn(int opcode, int var) {
+        startCode();
+        bytecodeCtr++;
+        if (opcode == RET)
+            endOfBasicBlock();
+        mv.visitVarInsn(opcode, var);
+    }
+
+    public void visitTypeInsn(int opcode, String type) {
+        startCode();
+        bytecodeCtr++;
+        mv.visitTypeInsn(opcode, classReference(type));
+    }
+
+    public void visitMultiANewArrayInsn(String desc, int dims) {
+        startCode();
+        bytecodeCtr++;
+        mv.visitMultiANewArrayInsn(classDescReference(desc), dims);
+    }
+
+    public void visitLdcInsn(Object cst) {
+        startCode();
+        bytecodeCtr++;
+        if (cst instanceof Type) {
+            cst = Type.getType(classDescReference(cst.toString()));
+        }
+        mv.visitLdcInsn(cst);
+    }
+
+    public void visitJumpInsn(int opcode, Label label) {
+        startCode();
+        bytecodeCtr++;
+        endOfBasicBlock();
+        mv.visitJumpInsn(opcode, label);
+    }
+
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels) {
+        startCode();
+        bytecodeCtr++;
+        endOfBasicBlock();
+        mv.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        startCode();
+        bytecodeCtr++;
+        endOfBasicBlock();
+        mv.visitLookupSwitchInsn(dflt, keys, labels);
+    }
+
+    public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+        startCode();
+
+        if (name.equals("hashCode") && desc.equals("()I") && opcode != INVOKESTATIC) {
+            bytecodeCtr++;
+            endOfBasicBlock();
+            // replace hashCode with deterministic version
+            // send the object, its hash code, and the hash code method owner to
+            // ObjectHashCode for analysis
+            mv.visitInsn(DUP);
+            mv.visitMethodInsn(opcode, classReference(owner), "hashCode", "()I");
+            mv.visitInsn(SWAP);
+            if (opcode == INVOKESPECIAL) {
+                mv.visitLdcInsn(Type.getObjectType(owner));
+            } else {
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;");
+            }
+            mv.visitMethodInsn(INVOKESTATIC, "battlecode/engine/instrumenter/lang/ObjectHashCode", usingFastHash ? "fastHashCode" : "hashCode", "(ILjava/lang/Object;Ljava/lang/Class;)I");
+            return;
+        }
+
+        if (name.equals("identityHashCode") && owner.equals("java/lang/System")) {
+            mv.visitMethodInsn(opcode, "battlecode/engine/instrumenter/lang/ObjectHashCode", name, desc);
+            return;
+        }
+
+        if (owner.equals("java/util/Random") && name.equals("<init>") &&
+                desc.equals("()V")) {
+            mv.visitMethodInsn(INVOKESTATIC, "battlecode/engine/instrumenter/lang/RoboRandom", "getMapSeed", "()J");
+            mv.visitMethodInsn(opcode, "instrumented/java/util/Random", name, "(J)V");
+            return;
+        }
+
+        if (owner.equals("java/lang/String")) {
+            if ((name.equals("<init>") && desc.equals("([B)V"))
+                    || (name.equals("<init>") && desc.equals("([BII)V"))
+                    || (name.equals("getBytes") && desc.equals("()[B"))) {
+                mv.visitLdcInsn("UTF-16");
+                desc = desc.replace(")", "Ljava/lang/String;)");
+            }
+        }
+
+        // check for banned functions
+        if (checkDisallowed) {
+            // do wait/notify monitoring
+            if ((desc.equals("()V") && (name.equals("wait") || name.equals("notify") || name.equals("notifyAll")))
+                    || (name.equals("wait") && (desc.equals("(J)V") || desc.equals("(JI)V")))) {
+                illegalMethod("Illegal method: Object." + name + "() cannot be called by a player.");
+            }
+
+            if (owner.equals("java/lang/Class") && name.equals("forName")) {
+                illegalMethod("Illegal method in" + className + ": Class.forName() may not be called by a player.");
+            }
+
+            if (owner.equals("java/io/PrintStream") && name.equals("<init>") && desc.startsWith("(Ljava/lang/String;")) {
+                illegalMethod("Illegal method in" + className + ": You may not use PrintStream to open files.");
+            }
+
+            if (owner.equals("java/lang/String") && name.equals("intern")) {
+                illegalMethod("Illegal method in " + className + ": String.intern() cannot be called by a player.");
+            }
+
+        }
+
+        boolean isDebugMethod = name.startsWith("debug_") && desc.endsWith("V") && owner.startsWith(teamPackageName);
+
+        // remember which engine method this is before the owner gets replaced
+        String profileName = null;
+        if (CpuProfiler.isEnabled() && !isDebugMethod && owner.startsWith("battlecode/common/"))
+            profileName = owner.substring("battlecode/common/".length()) + "." + name;
+
+        boolean endBasicBlock = owner.startsWith(teamPackageName) || classReference(owner).startsWith("instrumented") || owner.startsWith("battlecode");
+
+        if (!isDebugMethod)
+            bytecodeCtr++;
+
+        MethodCostUtil.MethodData data = MethodCostUtil.getMethodData(owner, name);
+        if (data != null) {
+            bytecodeCtr += data.cost;
+            endBasicBlock = data.shouldEndRound;
+        }
+
+        // do various function replacements
+        boolean removed = false;
+
+        // instrument string regex functions
+        if (owner.equals("java/lang/String") && RoboMethodTree.instrumentedStringFuncs.contains(name)) {
+            opcode = INVOKESTATIC;
+            desc = "(Ljava/lang/String;" + desc.substring(1);
+            owner = "instrumented/battlecode/engine/instrumenter/lang/InstrumentableFunctions";
+        } else if ((owner.equals("java/lang/Math") || owner.equals("java/lang/StrictMath")) && name.equals("random")) {
+            owner = "instrumented/battlecode/engine/instrumenter/lang/InstrumentableFunctions";
+        }
+        // see RoboMethodTree for why this is good enough
+        else if (name.equals("printStackTrace") && desc.equals("()V") &&
+                (owner == null || owner.equals("java/lang/Throwable") || RoboMethodTree.isSuperClass(owner, "java/lang/Throwable"))) {
+            mv.visitFieldInsn(GETSTATIC, "battlecode/engine/instrumenter/lang/System", "out", "Ljava/io/PrintStream;");
+            desc = "(Ljava/io/PrintStream;)V";
+        } else {
+            // replace class names
+            owner = classReference(owner);
+            desc = methodDescReference(desc);
+
+            if (isDebugMethod && !debugMethodsEnabled) {
+                // if debug methods aren't enabled, we remove the call to the debug method
+                // first, pop the arguments from the stack, in reverse order
+                Type[] args = Type.getArgumentTypes(desc);
+                for (int i = args.length - 1; i >= 0; i--) {
+                    switch (args[i].getSize()) {
+                        case 1:
+                            mv.visitInsn(POP);
+                            break;
+                        case 2:
+                            mv.visitInsn(POP2);
+                            break;
+                        default:
+                            ErrorReporter.report("Illegal type size: not 1 or 2", true);
+                            throw new InstrumentationException();
+                    }
+                }
+                // next, pop the class on which the method would be called
+                if (opcode != INVOKESTATIC)
+                    mv.visitInsn(POP);
+                // make sure a FrameNode never ends up without an instruction after it
+                if (args.length == 0 && opcode == INVOKESTATIC)
+                    mv.visitInsn(NOP);
+                removed = true;
+                // no function was called so don't end the basic block
+                endBasicBlock = false;
+            }
+        }
+
+        if (endBasicBlock)
+            endOfBasicBlock();
+
+        if (removed)
+            return;
+
+        // put these right next to the call so that incrementBytecodes, which might
+        // end the robot's turn, isn't timed
+        if (profileName != null) {
+            mv.visitLdcInsn(profileName);
+            mv.visitMethodInsn(INVOKESTATIC, "battlecode/engine/instrumenter/CpuProfiler", "enterApi", "(Ljava/lang/String;)V");
+        }
+        mv.visitMethodInsn(opcode, owner, name, desc);
+        if (profileName != null)
+            mv.visitMethodInsn(INVOKESTATIC, "battlecode/engine/instrumenter/CpuProfiler", "exitApi", "()V");
+    }
+
+    private void illegalMethod(String message) {
+        if (InstrumentingClassLoader.lazy()) {
+            mv.visitLdcInsn(message);
+            mv.visitMethodInsn(INVOKESTATIC, "battlecode/engine/instrumenter/RoboMethodTree", "reportIllegalMethod", "(Ljava/lang/String;)V");
+        } else {
+            ErrorReporter.report(message, false);
+            throw new InstrumentationException();
+        }
+    }
+
+    public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+        mv.visitLocalVariable(name, classDescReference(desc), fieldSignatureReference(signature), start, end, index);
+    }
+
+    public void visitMaxs(int maxStack, int maxLocals) {
+        startCode();
+        if (anyTryCatch) {
+            mv.visitLabel(robotDeathLabel);
+            mv.visitFrame(F_FULL, 0, new Object[0], 1, new Object[]{"java/lang/VirtualMachineError"});
+            mv.visitInsn(ATHROW);
+        }
+        mv.visitMaxs(0, 0);
+    }
+
+}
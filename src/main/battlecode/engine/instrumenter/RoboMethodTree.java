@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.objectweb.asm.tree.AbstractInsnNode.*;
@@ -31,7 +32,7 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
     // all the exception handlers we've seen in the code
     private final Set<LabelNode> exceptionHandlers = new HashSet<LabelNode>();
 
-    private static final Set<String> instrumentedStringFuncs = new HashSet<String>();
+    static final Set<String> instrumentedStringFuncs = new HashSet<String>();
 
     static {
         instrumentedStringFuncs.add("matches");
@@ -44,6 +45,9 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
 
     private int bytecodeCtr = 0;
 
+    // print calls removed by SilencedPrintElider, and what they would have cost
+    private Map<AbstractInsnNode, Integer> elidedPrints;
+
     private MethodVisitor methodWriter;
 
     private static boolean checkedFastHash = false, usingFastHash;
@@ -83,11 +87,19 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         for (Object o : tryCatchBlocks) {
             visitTryCatchBlockNode((TryCatchBlockNode) o);
         }
+        // nobody will ever see what a silenced team prints, so don't bother
+        // building the strings, but still charge for them
+        if (silenced)
+            elidedPrints = new SilencedPrintElider(this).elide();
         for (AbstractInsnNode node : instructions.toArray()) {
             // node could be taken out of the list
             // or have stuff inserted after it,
             // so node.getNext() might not be valid
             // after we visit node
+            if (elidedPrints != null && elidedPrints.containsKey(node)) {
+                bytecodeCtr += elidedPrints.get(node);
+                continue;
+            }
             switch (node.getType()) {
                 case FIELD_INSN:
                     visitFieldInsnNode((FieldInsnNode) node);
@@ -293,6 +305,11 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         }
 
         boolean isDebugMethod = n.name.startsWith("debug_") && n.desc.endsWith("V") && n.owner.startsWith(teamPackageName);
+
+        // remember which engine method this is before the owner gets replaced
+        String profileName = null;
+        if (CpuProfiler.isEnabled() && !isDebugMethod && n.owner.startsWith("battlecode/common/"))
+            profileName = n.owner.substring("battlecode/common/".length()) + "." + n.name;
         boolean endBasicBlock = n.owner.startsWith(teamPackageName) || classReference(n.owner).startsWith("instrumented") || n.owner.startsWith("battlecode");
 
         if (!isDebugMethod)
@@ -380,6 +397,14 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         if (endBasicBlock)
             endOfBasicBlock(n);
 
+        // put these right next to the call so that incrementBytecodes, which might
+        // end the robot's turn, isn't timed
+        if (profileName != null) {
+            instructions.insertBefore(n, new LdcInsnNode(profileName));
+            instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/CpuProfiler", "enterApi", "(Ljava/lang/String;)V"));
+            instructions.insert(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/CpuProfiler", "exitApi", "()V"));
+        }
+
     }
 
     private void illegalMethod(MethodInsnNode n, String message) {
@@ -457,7 +482,7 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
      * @param superclass - interface or superclass to test as an ancestor
      * @throws InstrumentationException if class <code>owner</code> cannot be found
      */
-    private static boolean isSuperClass(String owner, String superclass) {
+    static boolean isSuperClass(String owner, String superclass) {
         ClassReader cr = null;
 
         try {
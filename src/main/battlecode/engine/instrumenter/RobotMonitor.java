@@ -7,6 +7,7 @@ import battlecode.engine.instrumenter.lang.SilencedPrintStream;
 import battlecode.engine.scheduler.Scheduler;
 import battlecode.server.Config;
 
+import java.lang.management.ManagementFactory;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -33,6 +34,11 @@ public class RobotMonitor {
 
     private static GenericWorld myGameWorld = null;
 
+    // null if the JVM can't tell us how much memory each thread allocates
+    private static com.sun.management.ThreadMXBean threadBean;
+    private static long allocationLimit;
+    private static long allocatedBytes;
+
 
     /**
      * A "struct" that holds data about a robot's execution, e.g., bytecodes, stack size, etc.
@@ -42,6 +48,7 @@ public class RobotMonitor {
         public int debugLevel = 0;
         public final int ID;
         public boolean thrownRobotDeathException = false;
+        public long allocationStart;
 
         public RobotData(int ID) {
             this.ID = ID;
@@ -54,10 +61,35 @@ public class RobotMonitor {
 
     private static void init() {
         robotsToKill.clear();
+        CpuProfiler.reset();
         Config options = Config.getGlobalConfig();
         silenced[0] = options.getBoolean("bc.engine.silence-a");
         silenced[1] = options.getBoolean("bc.engine.silence-b");
         DEBUG_BYTECODES = options.getInt("bc.engine.debug-max-bytecodes");
+        allocationLimit = Long.parseLong(options.get("bc.engine.allocation-limit"));
+        threadBean = null;
+        if (options.getBoolean("bc.engine.track-allocation")) {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                    threadBean = sunBean;
+                }
+            }
+            if (threadBean == null)
+                System.out.println("[Engine] This JVM can't measure per-thread allocation; allocation tracking is disabled.");
+        }
+    }
+
+    /**
+     * Returns the total number of bytes the current thread has allocated, or 0 if
+     * allocation tracking is disabled.
+     */
+    private static long threadAllocatedBytes() {
+        if (threadBean == null)
+            return 0;
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
     }
 
     /**
@@ -101,6 +133,9 @@ public class RobotMonitor {
                 battlecode.engine.instrumenter.lang.System.out = stream;
                 battlecode.engine.instrumenter.lang.System.err = stream;
             }
+
+            newData.allocationStart = threadAllocatedBytes();
+            CpuProfiler.startTurn();
         }
     }
 
@@ -147,10 +182,32 @@ public class RobotMonitor {
         }
     }
 
+    /**
+     * Charges the currently active robot the given number of bytecodes without ending its run, so that the engine can
+     * finish the call it is in.  If the robot is left with no bytecodes, its run ends at its next call to incrementBytecodes,
+     * and the extra bytecodes come out of its next round as usual.
+     *
+     * @param numBytecodes the number of bytecodes to charge
+     */
+    public static void chargeBytecodes(int numBytecodes) {
+        bytecodesLeft -= numBytecodes;
+    }
+
     /**
      * Ends the run of the currently active robot.
      */
     public static void endRunner() {
+        // measure before endOfExecution so the engine's own bookkeeping isn't charged to the robot
+        allocatedBytes = threadAllocatedBytes() - currentRobotData.allocationStart;
+        if (allocationLimit > 0 && allocatedBytes > allocationLimit && !robotsToKill.contains(currentRobotData.ID)) {
+            System.out.println("[Engine] Robot " + getCurrentRobot() + " allocated " + allocatedBytes + " bytes in one turn, which is more than the limit of " + allocationLimit + ".  It will be killed.");
+            killRobot(currentRobotData.ID);
+        }
+        if (CpuProfiler.isEnabled()) {
+            GenericRobot robot = getCurrentRobot();
+            if (robot != null)
+                CpuProfiler.endTurn(currentRobotData.ID, robot.getTeam(), getBytecodesUsed());
+        }
         myGameWorld.endOfExecution(currentRobotData.ID);
         currentRobotData.debugLevel = debugLevel;
         if (debugLevel == 0)
@@ -204,6 +261,14 @@ public class RobotMonitor {
         return (double) getBytecodesUsed() / bytecodeLimit;
     }
 
+    /**
+     * Returns the number of bytes of memory that the active robot allocated during the turn that
+     * just ended, or 0 if allocation tracking is disabled.  Only valid inside endOfExecution.
+     */
+    public static long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
     /**
      * Notifies the RobotMonitor of what the current GameWorld is.  Should be called before the start of each game.
      */
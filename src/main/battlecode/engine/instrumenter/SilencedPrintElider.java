@@ -0,0 +1,272 @@
+package battlecode.engine.instrumenter;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Strips System.out/System.err print calls out of a method belonging to a silenced team.
+ * <p/>
+ * A silenced robot's System.out is a SilencedPrintStream, so anything it prints is thrown away,
+ * but the robot still spends real CPU time building the string it prints.  This class finds
+ * print calls, along with the StringBuilder chains that build their arguments, and replaces each
+ * one with a NOP.  The map returned by <code>elide()</code> gives the bytecode cost of the
+ * instructions that each NOP replaced, so that RoboMethodTree can charge the robot exactly what
+ * it would have been charged for the original code.
+ * <p/>
+ * Only code that can't have any side effects is removed.  Every value that gets printed or
+ * appended must be a constant or a local variable, nothing may end up calling a player's
+ * toString(), nothing may throw, and the whole call must lie inside one basic block.
+ */
+class SilencedPrintElider implements Opcodes {
+
+    private final InsnList instructions;
+
+    private final Map<AbstractInsnNode, Integer> elided = new HashMap<AbstractInsnNode, Integer>();
+
+    // the bytecode cost of the print call that is currently being matched
+    private int cost;
+
+    // set by matchValue: whether the value can be appended as an Object without calling
+    // toString() on a player's object, and whether it is known not to be null
+    private boolean valueSafe;
+    private boolean valueNonNull;
+
+    public SilencedPrintElider(MethodNode method) {
+        instructions = method.instructions;
+    }
+
+    /**
+     * Replaces every print call that can safely be removed with a NOP.
+     *
+     * @return a map from each NOP that was inserted to the bytecode cost of the code it replaced
+     */
+    public Map<AbstractInsnNode, Integer> elide() {
+        AbstractInsnNode n = instructions.getFirst();
+        while (n != null) {
+            AbstractInsnNode next = n.getNext();
+            if (isSystemStream(n)) {
+                AbstractInsnNode end = matchPrint(n);
+                if (end != null) {
+                    next = end.getNext();
+                    replace(n, end);
+                }
+            }
+            n = next;
+        }
+        return elided;
+    }
+
+    private void replace(AbstractInsnNode start, AbstractInsnNode end) {
+        // Keep a NOP in place of the call.  If we removed everything, two frames
+        // could end up at the same offset.
+        InsnNode nop = new InsnNode(NOP);
+        instructions.insertBefore(start, nop);
+        AbstractInsnNode n = start;
+        while (true) {
+            AbstractInsnNode next = n.getNext();
+            instructions.remove(n);
+            if (n == end)
+                break;
+            n = next;
+        }
+        elided.put(nop, cost);
+    }
+
+    /**
+     * Matches GETSTATIC System.out, the argument, and the call to print.
+     *
+     * @return the call to print, or null if the code doesn't match
+     */
+    private AbstractInsnNode matchPrint(AbstractInsnNode stream) {
+        cost = 1;
+        int numArgs = 0;
+        AbstractInsnNode n = next(stream);
+        if (n == null)
+            return null;
+        if (n.getOpcode() == NEW && isStringBuilder(((TypeInsnNode) n).desc)) {
+            n = matchBuilderChain((TypeInsnNode) n);
+            numArgs = 1;
+        } else if (!isPrintCall(n)) {
+            n = matchValue(n);
+            numArgs = 1;
+        }
+        if (n == null)
+            return null;
+        if (numArgs > 0)
+            n = next(n);
+        // SilencedPrintStream ignores its argument, so any argument type is fine here
+        if (n == null || !isPrintCall(n) || Type.getArgumentTypes(((MethodInsnNode) n).desc).length != numArgs)
+            return null;
+        return chargeMethod((MethodInsnNode) n) ? n : null;
+    }
+
+    /**
+     * Matches <code>new StringBuilder(...).append(...)...toString()</code>.
+     *
+     * @return the call to toString, or null if the code doesn't match
+     */
+    private AbstractInsnNode matchBuilderChain(TypeInsnNode newInsn) {
+        String owner = newInsn.desc;
+        cost++;
+        AbstractInsnNode n = next(newInsn);
+        if (n == null || n.getOpcode() != DUP)
+            return null;
+        cost++;
+        n = next(n);
+        if (n == null)
+            return null;
+        if (isBuilderCall(n, owner, "<init>")) {
+            if (!((MethodInsnNode) n).desc.equals("()V"))
+                return null;
+        } else {
+            n = matchValue(n);
+            // new StringBuilder(null) throws a NullPointerException
+            if (n == null || !valueNonNull)
+                return null;
+            n = next(n);
+            if (n == null || !isBuilderCall(n, owner, "<init>") || !((MethodInsnNode) n).desc.equals("(Ljava/lang/String;)V"))
+                return null;
+        }
+        if (!chargeMethod((MethodInsnNode) n))
+            return null;
+        while (true) {
+            n = next(n);
+            if (n == null)
+                return null;
+            if (isBuilderCall(n, owner, "toString"))
+                return chargeMethod((MethodInsnNode) n) ? n : null;
+            n = matchValue(n);
+            if (n == null)
+                return null;
+            n = next(n);
+            if (n == null || !isBuilderCall(n, owner, "append") || !canAppend(((MethodInsnNode) n).desc))
+                return null;
+            if (!chargeMethod((MethodInsnNode) n))
+                return null;
+        }
+    }
+
+    /**
+     * Matches a constant or a local variable, optionally passed through String.valueOf.
+     *
+     * @return the last instruction of the value, or null if the code doesn't match
+     */
+    private AbstractInsnNode matchValue(AbstractInsnNode n) {
+        int op = n.getOpcode();
+        if (op == LDC) {
+            if (((LdcInsnNode) n).cst instanceof Type)
+                return null;
+        } else if (!((op >= ACONST_NULL && op <= SIPUSH) || (op >= ILOAD && op <= ALOAD)))
+            return null;
+        cost++;
+        valueSafe = op == LDC || op == ACONST_NULL;
+        valueNonNull = op == LDC;
+        AbstractInsnNode after = next(n);
+        if (after != null && after.getOpcode() == INVOKESTATIC) {
+            MethodInsnNode m = (MethodInsnNode) after;
+            if (m.owner.equals("java/lang/String") && m.name.equals("valueOf")) {
+                Type[] args = Type.getArgumentTypes(m.desc);
+                // String.valueOf(char[]) throws on null, and String.valueOf(Object)
+                // could call a player's toString()
+                if (args.length != 1 || args[0].getSort() == Type.ARRAY
+                        || (args[0].getSort() == Type.OBJECT && !valueSafe))
+                    return null;
+                if (!chargeMethod(m))
+                    return null;
+                valueSafe = valueNonNull = true;
+                return m;
+            }
+        }
+        return n;
+    }
+
+    private boolean canAppend(String desc) {
+        Type[] args = Type.getArgumentTypes(desc);
+        if (args.length != 1)
+            return false;
+        switch (args[0].getSort()) {
+            case Type.ARRAY:
+                // append(char[]) throws on null
+                return false;
+            case Type.OBJECT:
+                String name = args[0].getInternalName();
+                if (name.equals("java/lang/String"))
+                    return true;
+                if (name.equals("java/lang/Object") || name.equals("java/lang/CharSequence"))
+                    return valueSafe;
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Adds the cost of a method call, as computed by RoboMethodTree, to the cost of
+     * the current print call.  Returns false if the call would end the basic block,
+     * in which case we leave the code alone.  None of the classes we match are
+     * instrumented, so only MethodCosts.txt can make a call end the block.
+     */
+    private boolean chargeMethod(MethodInsnNode m) {
+        cost++;
+        MethodCostUtil.MethodData data = MethodCostUtil.getMethodData(m.owner, m.name);
+        if (data != null) {
+            if (data.shouldEndRound)
+                return false;
+            cost += data.cost;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next real instruction after n, or null if we run into the end of
+     * the method or the end of the basic block.
+     */
+    private AbstractInsnNode next(AbstractInsnNode n) {
+        for (n = n.getNext(); n != null; n = n.getNext()) {
+            switch (n.getType()) {
+                case AbstractInsnNode.LINE:
+                    break;
+                // RoboMethodTree ends a basic block at every label, so stop at
+                // labels too.  That way the cost of the removed code is charged
+                // by the same call to incrementBytecodes as before.
+                case AbstractInsnNode.LABEL:
+                case AbstractInsnNode.FRAME:
+                    return null;
+                default:
+                    return n;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSystemStream(AbstractInsnNode n) {
+        if (n.getOpcode() != GETSTATIC)
+            return false;
+        FieldInsnNode f = (FieldInsnNode) n;
+        return f.owner.equals("java/lang/System") && (f.name.equals("out") || f.name.equals("err"));
+    }
+
+    private static boolean isPrintCall(AbstractInsnNode n) {
+        if (n.getOpcode() != INVOKEVIRTUAL)
+            return false;
+        MethodInsnNode m = (MethodInsnNode) n;
+        return m.owner.equals("java/io/PrintStream") && (m.name.equals("print") || m.name.equals("println"))
+                && m.desc.endsWith(")V");
+    }
+
+    private static boolean isStringBuilder(String owner) {
+        return owner.equals("java/lang/StringBuilder") || owner.equals("java/lang/StringBuffer");
+    }
+
+    private static boolean isBuilderCall(AbstractInsnNode n, String owner, String name) {
+        int op = n.getOpcode();
+        if (op != INVOKEVIRTUAL && op != INVOKESPECIAL)
+            return false;
+        MethodInsnNode m = (MethodInsnNode) n;
+        return m.owner.equals(owner) && m.name.equals(name) && (op == INVOKESPECIAL) == name.equals("<init>");
+    }
+}
@@ -23,6 +23,9 @@ public class GameStats implements Serializable {
     private DominationFactor dominationFactor = null;
     private double excitementFactor = 0.0;
 
+    private long[] totalAllocatedBytes = new long[2];
+    private long[] maxTurnAllocatedBytes = new long[2];
+
     private int timeToTallestTower = 0;
     private int tallestTower = 0;
 
@@ -68,6 +71,19 @@ public class GameStats implements Serializable {
             totalEnergon[index] = energon;
     }
 
+    /**
+     * Records that a robot on team t allocated the given number of bytes
+     * during one turn.
+     */
+    public void addAllocatedBytes(Team t, long bytes) {
+        int index = t.ordinal();
+        if (index >= 2)
+            return;
+        totalAllocatedBytes[index] += bytes;
+        if (bytes > maxTurnAllocatedBytes[index])
+            maxTurnAllocatedBytes[index] = bytes;
+    }
+
     public void setTimeToTallestTower(int numRounds) {
         timeToTallestTower = numRounds;
     }
@@ -104,6 +120,14 @@ public class GameStats implements Serializable {
         return this.numArchons;
     }
 
+    public long[] getTotalAllocatedBytes() {
+        return totalAllocatedBytes;
+    }
+
+    public long[] getMaxTurnAllocatedBytes() {
+        return maxTurnAllocatedBytes;
+    }
+
     public int getTimeToTallestTower() {
         return timeToTallestTower;
     }
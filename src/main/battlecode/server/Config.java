@@ -44,13 +44,20 @@ public class Config {
         defaults.setProperty("bc.engine.debug-max-bytecodes", "64000");
         defaults.setProperty("bc.engine.silence-a", "false");
         defaults.setProperty("bc.engine.silence-b", "false");
+        defaults.setProperty("bc.engine.silence-elide", "false");
+        defaults.setProperty("bc.engine.track-allocation", "true");
+        defaults.setProperty("bc.engine.allocation-limit", "0");
+        defaults.setProperty("bc.engine.cpu-profile", "false");
         defaults.setProperty("bc.engine.gc", "false");
         defaults.setProperty("bc.engine.gc-rounds", "50");
         defaults.setProperty("bc.engine.upkeep", "true");
         defaults.setProperty("bc.engine.breakpoints", "false");
         defaults.setProperty("bc.engine.bytecodes-used", "true");
         defaults.setProperty("bc.engine.lazy-instrumenter", "false");
+        defaults.setProperty("bc.engine.lazy-methods", "false");
+        defaults.setProperty("bc.engine.streaming-instrumenter", "false");
         defaults.setProperty("bc.engine.fast-hash", "false");
+        defaults.setProperty("bc.engine.check-unit-counts", "false");
 
         defaults.setProperty("bc.client.opengl", "false");
         defaults.setProperty("bc.client.use-models", "true");
@@ -3,6 +3,7 @@ package battlecode.server;
 import battlecode.common.Team;
 import battlecode.engine.ErrorReporter;
 import battlecode.engine.GameState;
+import battlecode.engine.instrumenter.CpuProfiler;
 import battlecode.engine.signal.Signal;
 import battlecode.serial.*;
 import battlecode.serial.notification.*;
@@ -402,6 +403,12 @@ public class Server implements Observer, Runnable {
 
         double timeDiff = (System.currentTimeMillis() - startTime) / 1000.0;
         debug(String.format("match completed in %.4g seconds", timeDiff));
+        long[] allocated = gameStats.getTotalAllocatedBytes();
+        long[] maxAllocated = gameStats.getMaxTurnAllocatedBytes();
+        debug(String.format("allocated bytes: A %d (max %d per turn), B %d (max %d per turn)",
+                allocated[0], maxAllocated[0], allocated[1], maxAllocated[1]));
+        if (CpuProfiler.isEnabled())
+            say(CpuProfiler.report());
 
         for (Proxy p : proxies) {
             p.writeObject(gameStats);
@@ -19,14 +19,14 @@ public class BaseWorld<WorldObject extends BaseObject> {
     protected final ArrayList<Signal> signals;
     protected final long[][] archonMemory;
     protected final long[][] oldArchonMemory;
-    protected final Map<Integer, WorldObject> gameObjectsByID;
+    protected final ObjectTable<WorldObject> gameObjectsByID;
     protected final ArrayList<Integer> randomIDs = new ArrayList<Integer>();
 
     public BaseWorld(int seed, String teamA, String teamB, long[][] oldArchonMemory) {
         currentRound = -1;
         teamAName = teamA;
         teamBName = teamB;
-        gameObjectsByID = new LinkedHashMap<Integer, WorldObject>();
+        gameObjectsByID = new ObjectTable<WorldObject>();
         signals = new ArrayList<Signal>();
         randGen = new Random(seed);
         nextID = 1;
@@ -0,0 +1,130 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of the encampment squares on the map and which team owns each one.
+ * <p/>
+ * Every list this class returns is in the order in which the encampments were
+ * added to the map.
+ */
+class EncampmentIndex {
+
+    private static final Team[] teams = Team.values();
+
+    private final GameMap map;
+
+    // the owner of the encampment at each location plus one, or zero if there is
+    // no encampment there, indexed by GameMap.getLocationIndex
+    private final byte[] owners;
+    // the position of the encampment at each location in the list of all encampments
+    private final int[] order;
+
+    private final List<MapLocation> all = new ArrayList<MapLocation>();
+    private final List<MapLocation>[] byTeam;
+
+    EncampmentIndex(GameMap map) {
+        this.map = map;
+        owners = new byte[map.getWidth() * map.getHeight()];
+        order = new int[owners.length];
+        @SuppressWarnings("unchecked")
+        List<MapLocation>[] byTeam = (List<MapLocation>[]) new List<?>[teams.length];
+        for (int i = 0; i < byTeam.length; i++)
+            byTeam[i] = new ArrayList<MapLocation>();
+        this.byTeam = byTeam;
+    }
+
+    /**
+     * Adds an encampment, or changes its owner if there is already an encampment at loc.
+     */
+    void setOwner(MapLocation loc, Team t) {
+        int index = map.getLocationIndex(loc);
+        if (index < 0)
+            return;
+        if (owners[index] == 0) {
+            order[index] = all.size();
+            all.add(loc);
+        } else {
+            Team old = teams[owners[index] - 1];
+            if (old == t)
+                return;
+            byTeam[old.ordinal()].remove(loc);
+        }
+        owners[index] = (byte) (t.ordinal() + 1);
+        // keep the team's list in the same order as the list of all encampments
+        List<MapLocation> list = byTeam[t.ordinal()];
+        int i = list.size();
+        while (i > 0 && order[map.getLocationIndex(list.get(i - 1))] > order[index])
+            i--;
+        list.add(i, loc);
+    }
+
+    /**
+     * Returns the owner of the encampment at loc, or null if there is no encampment there.
+     */
+    Team getOwner(MapLocation loc) {
+        int index = map.getLocationIndex(loc);
+        if (index < 0 || owners[index] == 0)
+            return null;
+        return teams[owners[index] - 1];
+    }
+
+    List<MapLocation> getAll() {
+        return Collections.unmodifiableList(all);
+    }
+
+    List<MapLocation> getByTeam(Team t) {
+        return Collections.unmodifiableList(byTeam[t.ordinal()]);
+    }
+
+    int count(Team t) {
+        return byTeam[t.ordinal()].size();
+    }
+
+    /**
+     * Returns the encampments within radiusSquared of center.
+     */
+    List<MapLocation> getWithinRadiusSq(MapLocation center, int radiusSquared) {
+        List<MapLocation> found = new ArrayList<MapLocation>();
+        if (radiusSquared < 0)
+            return found;
+        int radius = (int) Math.sqrt(radiusSquared);
+        MapLocation origin = map.getMapOrigin();
+        int minX = Math.max(center.x - radius, origin.x);
+        int maxX = Math.min(center.x + radius, origin.x + map.getWidth() - 1);
+        int minY = Math.max(center.y - radius, origin.y);
+        int maxY = Math.min(center.y + radius, origin.y + map.getHeight() - 1);
+        if (minX > maxX || minY > maxY)
+            return found;
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > all.size()) {
+            // there are fewer encampments than squares to look at
+            for (MapLocation loc : all)
+                if (loc.distanceSquaredTo(center) <= radiusSquared)
+                    found.add(loc);
+            return found;
+        }
+        int[] indices = new int[16];
+        int n = 0;
+        for (int x = minX; x <= maxX; x++) {
+            int index = (x - origin.x) * map.getHeight() + (minY - origin.y);
+            for (int y = minY; y <= maxY; y++, index++) {
+                int dx = x - center.x, dy = y - center.y;
+                if (owners[index] != 0 && dx * dx + dy * dy <= radiusSquared) {
+                    if (n == indices.length)
+                        indices = Arrays.copyOf(indices, 2 * n);
+                    indices[n++] = order[index];
+                }
+            }
+        }
+        Arrays.sort(indices, 0, n);
+        for (int i = 0; i < n; i++)
+            found.add(all.get(indices[i]));
+        return found;
+    }
+}
@@ -53,6 +53,19 @@ public class GameMap implements GenericGameMap {
      * The maximum number of rounds in the game
      */
     private final int maxRounds;
+    /**
+     * The MapLocation for each location on the map, indexed by getLocationIndex
+     * and filled in as they're needed, so the engine doesn't keep making new ones.
+     */
+    private transient MapLocation[] locations;
+    /**
+     * The ordinal of the TerrainTile at each location, indexed by getLocationIndex.
+     * mapTiles is what gets saved and sent to the client; this is the copy the
+     * engine reads, built the first time it's needed.
+     */
+    private transient byte[] tiles;
+
+    private static final TerrainTile[] TILE_VALUES = TerrainTile.values();
 
     /** The minimum number of points needed to win the game */
     //private final int minPoints;
@@ -189,6 +202,54 @@ public class GameMap implements GenericGameMap {
         return onTheMap(location.x, location.y);
     }
 
+    /**
+     * Returns a number from 0 to width * height - 1 that is different for
+     * each location on the map, for use as an array index.
+     *
+     * @param location the MapLocation to look up
+     * @return the index of the given location, or -1 if the location
+     *         is off the map
+     */
+    public int getLocationIndex(MapLocation location) {
+        return getLocationIndex(location.x, location.y);
+    }
+
+    /**
+     * Returns the index of the location (x, y), or -1 if it is off the map.
+     *
+     * @see #getLocationIndex(MapLocation)
+     */
+    public int getLocationIndex(int x, int y) {
+        if (!onTheMap(x, y))
+            return -1;
+
+        return (x - mapOriginX) * mapHeight + (y - mapOriginY);
+    }
+
+    /**
+     * Returns the location with the given index.
+     *
+     * @param index a number returned by getLocationIndex
+     * @return the location with that index
+     */
+    public MapLocation getLocationByIndex(int index) {
+        if (locations == null)
+            locations = new MapLocation[mapWidth * mapHeight];
+        MapLocation loc = locations[index];
+        if (loc == null)
+            loc = locations[index] = new MapLocation(mapOriginX + index / mapHeight, mapOriginY + index % mapHeight);
+        return loc;
+    }
+
+    /**
+     * Returns the location (x, y).  Every call with the same location on the
+     * map returns the same MapLocation; locations off the map are new each time.
+     */
+    public MapLocation getLocation(int x, int y) {
+        int index = getLocationIndex(x, y);
+        return index < 0 ? new MapLocation(x, y) : getLocationByIndex(index);
+    }
+
     /**
      * Determines the type of the terrain on the map at the
      * given location.
@@ -199,10 +260,21 @@ public class GameMap implements GenericGameMap {
      *         off the map.
      */
     public TerrainTile getTerrainTile(MapLocation location) {
-        if (!onTheMap(location))
+        int index = getLocationIndex(location.x, location.y);
+        if (index < 0)
             return TerrainTile.OFF_MAP;
 
-        return mapTiles[location.x - mapOriginX][location.y - mapOriginY];
+        if (tiles == null)
+            tiles = computeTiles();
+        return TILE_VALUES[tiles[index]];
+    }
+
+    private byte[] computeTiles() {
+        byte[] result = new byte[mapWidth * mapHeight];
+        for (int x = 0; x < mapWidth; x++)
+            for (int y = 0; y < mapHeight; y++)
+                result[x * mapHeight + y] = (byte) mapTiles[x][y].ordinal();
+        return result;
     }
 
     /**
@@ -254,16 +326,31 @@ public class GameMap implements GenericGameMap {
             BUFFER = buf + GameConstants.VISION_UPGRADE_BONUS;
         }
 
-        private final boolean data[][];
+        // COLUMNS[r2][radius + dx] is the largest dy with dx * dx + dy * dy <= r2
+        private final static int[][] COLUMNS = new int[BUFFER + 1][];
+
+        static {
+            for (int r2 = 0; r2 <= BUFFER; r2++) {
+                int radius = (int) Math.sqrt(r2);
+                COLUMNS[r2] = new int[2 * radius + 1];
+                for (int dx = -radius; dx <= radius; dx++)
+                    COLUMNS[r2][radius + dx] = (int) Math.sqrt(r2 - dx * dx);
+            }
+        }
+
+        // one bit per square, one row of wordsPerRow longs for each X
+        private final long data[];
         private final GameMap map;
         private final int Xwidth;
         private final int Ywidth;
+        private final int wordsPerRow;
 
         public MapMemory(GameMap map) {
             this.map = map;
             Xwidth = map.mapWidth + (2 * BUFFER);
             Ywidth = map.mapHeight + (2 * BUFFER);
-            data = new boolean[Xwidth][Ywidth];
+            wordsPerRow = (Ywidth + 63) >>> 6;
+            data = new long[Xwidth * wordsPerRow];
         }
 
         public void rememberLocations(MapLocation loc, int[] offsetsX, int[] offsetsY) {
@@ -271,7 +358,41 @@ public class GameMap implements GenericGameMap {
             int Y = loc.y - map.mapOriginY + BUFFER;
 
             for (int i = 0; i < offsetsX.length; i++) {
-                data[X + offsetsX[i]][Y + offsetsY[i]] = true;
+                int y = Y + offsetsY[i];
+                data[(X + offsetsX[i]) * wordsPerRow + (y >>> 6)] |= 1L << y;
+            }
+        }
+
+        /**
+         * Remembers every square within the given squared radius of loc, which
+         * must be no more than BUFFER.  Each column of the circle is a run of
+         * bits in one row, so it's set a word at a time.
+         */
+        public void rememberLocations(MapLocation loc, int radiusSquared) {
+            int X = loc.x - map.mapOriginX + BUFFER;
+            int Y = loc.y - map.mapOriginY + BUFFER;
+            int[] columns = COLUMNS[radiusSquared];
+            int radius = columns.length >> 1;
+
+            for (int i = 0; i < columns.length; i++) {
+                int dy = columns[i];
+                setRun((X + i - radius) * wordsPerRow, Y - dy, Y + dy);
+            }
+        }
+
+        // sets bits from through to, inclusive, of the row starting at data[row]
+        private void setRun(int row, int from, int to) {
+            int first = row + (from >>> 6);
+            int last = row + (to >>> 6);
+            long firstMask = -1L << from;
+            long lastMask = -1L >>> (63 - (to & 63));
+            if (first == last) {
+                data[first] |= firstMask & lastMask;
+            } else {
+                data[first] |= firstMask;
+                for (int i = first + 1; i < last; i++)
+                    data[i] = -1L;
+                data[last] |= lastMask;
             }
         }
 
@@ -279,7 +400,8 @@ public class GameMap implements GenericGameMap {
             int X = loc.x - map.mapOriginX + BUFFER;
             int Y = loc.y - map.mapOriginY + BUFFER;
 
-            if (X >= 0 && X < Xwidth && Y >= 0 && Y < Ywidth && data[X][Y])
+            if (X >= 0 && X < Xwidth && Y >= 0 && Y < Ywidth
+                    && (data[X * wordsPerRow + (Y >>> 6)] & (1L << Y)) != 0)
                 return map.getTerrainTile(loc);
             else
                 return null;
@@ -287,37 +409,14 @@ public class GameMap implements GenericGameMap {
     }
 
     public static int[][] computeOffsets360(int radiusSquared) {
-        int[] XOffsets = new int[4 * radiusSquared + 7];
-        int[] YOffsets = new int[4 * radiusSquared + 7];
-        int nOffsets = 0;
-        for (int y = 0; y * y <= radiusSquared; y++) {
-            XOffsets[nOffsets] = 0;
-            YOffsets[nOffsets] = y;
-            nOffsets++;
-            if (y > 0) {
-                XOffsets[nOffsets] = 0;
-                YOffsets[nOffsets] = -y;
-                nOffsets++;
-            }
-            for (int x = 1; x * x + y * y <= radiusSquared; x++) {
-                MapLocation loc = new MapLocation(x, y);
-                XOffsets[nOffsets] = x;
-                YOffsets[nOffsets] = y;
-                nOffsets++;
-                XOffsets[nOffsets] = -x;
-                YOffsets[nOffsets] = y;
-                nOffsets++;
-                if (y > 0) {
-                    XOffsets[nOffsets] = x;
-                    YOffsets[nOffsets] = -y;
-                    nOffsets++;
-                    XOffsets[nOffsets] = -x;
-                    YOffsets[nOffsets] = -y;
-                    nOffsets++;
-                }
-            }
+        int[] offsets = RadiusOffsets.get(radiusSquared);
+        int[] XOffsets = new int[offsets.length / 2];
+        int[] YOffsets = new int[offsets.length / 2];
+        for (int i = 0; i < XOffsets.length; i++) {
+            XOffsets[i] = offsets[2 * i];
+            YOffsets[i] = offsets[2 * i + 1];
         }
-        return new int[][]{Arrays.copyOf(XOffsets, nOffsets), Arrays.copyOf(YOffsets, nOffsets)};
+        return new int[][]{XOffsets, YOffsets};
     }
 
     public static Map<RobotType, int[][][]> computeVisibleOffsets() {
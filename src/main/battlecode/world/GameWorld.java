@@ -1,14 +1,14 @@
 package battlecode.world;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import battlecode.common.Direction;
@@ -31,6 +31,7 @@ import battlecode.engine.signal.SignalHandler;
 import battlecode.serial.DominationFactor;
 import battlecode.serial.GameStats;
 import battlecode.serial.RoundStats;
+import battlecode.server.Config;
 import battlecode.world.signal.AttackSignal;
 import battlecode.world.signal.BroadcastSignal;
 import battlecode.world.signal.BytecodesUsedSignal;
@@ -70,26 +71,60 @@ oODO:
  */
 public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld {
 
+    private static final Team[] teams = Team.values();
+
     private final GameMap gameMap;
     private RoundStats roundStats = null;    // stats for each round; new object is created for each round
     private final GameStats gameStats = new GameStats();        // end-of-game stats
     private double[] teamRoundResources = new double[2];
     private double[] lastRoundResources = new double[2];
-    private final Map<MapLocation3D, InternalObject> gameObjectsByLoc = new HashMap<MapLocation3D, InternalObject>();
+    // the object at each location, indexed by level and then GameMap.getLocationIndex
+    private final InternalObject[][] gameObjectsByLoc;
+    private final SpatialIndex spatialIndex;
+    private final SharedVision sharedVision;
     private double[] teamResources = new double[2];
     private double[] teamSpawnRate = new double[2];
     private int[] teamCapturingNumber = new int[2];
-
-    private List<MapLocation> encampments = new ArrayList<MapLocation>();
-    private Map<MapLocation, Team> encampmentMap = new HashMap<MapLocation, Team>();
+    // the number of live robots of each team and type
+    private final int[][] robotCounts = new int[teams.length][RobotType.values().length];
+    private final int[] unitCounts = new int[teams.length];
+    // each team's total energon in millionths, so that the totals are exact
+    // no matter what order energon is added and subtracted in
+    private final long[] energonTotals = new long[teams.length];
+    // whether to check the counts against the robots at the end of every round
+    private final boolean checkUnitCounts;
+
+    private final EncampmentIndex encampments;
     private Map<Team, InternalRobot> baseHQs = new EnumMap<Team, InternalRobot>(Team.class);
-    private Map<MapLocation, Team> mineLocations = new HashMap<MapLocation, Team>();
+    // the team of the mine at each location plus one, or zero if there is no mine there,
+    // indexed by GameMap.getLocationIndex
+    private final byte[] mines;
+    private final int[] mineCounts = new int[Team.values().length];
     private Map<Team, GameMap.MapMemory> mapMemory = new EnumMap<Team, GameMap.MapMemory>(Team.class);
-    private Map<Team, Set<MapLocation>> knownMineLocations = new EnumMap<Team, Set<MapLocation>>(Team.class);
+    // the mines each team knows about, indexed by GameMap.getLocationIndex
+    private Map<Team, BitSet> knownMineLocations = new EnumMap<Team, BitSet>(Team.class);
     private Map<Team, Map<Upgrade, Integer>> research = new EnumMap<Team, Map<Upgrade, Integer>>(Team.class);
     
     private Map<Team, Set<Upgrade>> upgrades = new EnumMap<Team, Set<Upgrade>>(Team.class);
-    private Map<Integer, Integer> radio = new HashMap<Integer, Integer>();
+    private final int[] radio = new int[GameConstants.BROADCAST_MAX_CHANNELS + 1];
+
+    // reused by processBeginningOfRound and processEndOfRound so that objects
+    // added or removed during the round don't affect which ones get processed
+    private InternalObject[] roundObjects = new InternalObject[64];
+
+    // robots whose energon or shield has changed since the last call to getAllSignals
+    private InternalRobot[] changedRobots = new InternalRobot[64];
+    private int changedCount;
+
+    // changes whenever something could change what a robot can sense: an
+    // object appearing, moving or leaving, or a team's vision changing
+    private int sensingEpoch;
+
+    static final Comparator<InternalObject> addedOrderComparator = new Comparator<InternalObject>() {
+        public int compare(InternalObject a, InternalObject b) {
+            return a.addedOrder < b.addedOrder ? -1 : (a.addedOrder == b.addedOrder ? 0 : 1);
+        }
+    };
 
     // robots to remove from the game at end of turn
     private List<InternalRobot> deadRobots = new ArrayList<InternalRobot>();
@@ -98,13 +133,19 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     public GameWorld(GameMap gm, String teamA, String teamB, long[][] oldArchonMemory) {
         super(gm.getSeed(), teamA, teamB, oldArchonMemory);
         gameMap = gm;
+        checkUnitCounts = Config.getGlobalConfig().getBoolean("bc.engine.check-unit-counts");
+        gameObjectsByLoc = new InternalObject[RobotLevel.values().length][gm.getWidth() * gm.getHeight()];
+        spatialIndex = new SpatialIndex(gm);
+        sharedVision = new SharedVision(this, gm);
         mapMemory.put(Team.A, new GameMap.MapMemory(gameMap));
         mapMemory.put(Team.B, new GameMap.MapMemory(gameMap));
         mapMemory.put(Team.NEUTRAL, new GameMap.MapMemory(gameMap));
         upgrades.put(Team.A, EnumSet.noneOf(Upgrade.class));
         upgrades.put(Team.B, EnumSet.noneOf(Upgrade.class));
-        knownMineLocations.put(Team.A, new HashSet<MapLocation>());
-        knownMineLocations.put(Team.B, new HashSet<MapLocation>());
+        mines = new byte[gm.getWidth() * gm.getHeight()];
+        encampments = new EncampmentIndex(gm);
+        knownMineLocations.put(Team.A, new BitSet());
+        knownMineLocations.put(Team.B, new BitSet());
         research.put(Team.A, new EnumMap<Upgrade, Integer>(Upgrade.class));
         research.put(Team.B, new EnumMap<Upgrade, Integer>(Upgrade.class));
     }
@@ -129,38 +170,94 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         wasBreakpointHit = false;
 
         // reset necessary game constants
-        teamSpawnRate = new double[]{GameConstants.HQ_SPAWN_DELAY, GameConstants.HQ_SPAWN_DELAY};
-        
+        Arrays.fill(teamSpawnRate, GameConstants.HQ_SPAWN_DELAY);
+
+        // power production and spawn rates only depend on how many robots of
+        // each type a team has, so there's no need to visit every robot
+        for (int t = 0; t < teamResources.length; t++) {
+            int[] counts = robotCounts[t];
+            // add one robot's production at a time, HQ first, so the totals
+            // round the same way as when each robot added its own
+            for (int i = counts[RobotType.HQ.ordinal()]; i > 0; i--)
+                teamResources[t] += GameConstants.HQ_POWER_PRODUCTION;
+            for (int i = counts[RobotType.GENERATOR.ordinal()]; i > 0; i--)
+                teamResources[t] += GameConstants.GENERATOR_POWER_PRODUCTION;
+            for (int i = counts[RobotType.SUPPLIER.ordinal()]; i > 0; i--)
+                adjustSpawnRate(teams[t], GameConstants.HQ_SPAWN_DELAY_CONSTANT);
+        }
+
         // process all gameobjects
-        InternalObject[] gameObjects = new InternalObject[gameObjectsByID.size()];
-        gameObjects = gameObjectsByID.values().toArray(gameObjects);
-        for (int i = 0; i < gameObjects.length; i++) {
+        InternalObject[] gameObjects = snapshotObjects();
+        int n = gameObjectsByID.size();
+        for (int i = 0; i < n; i++) {
             gameObjects[i].processBeginningOfRound();
         }
+        Arrays.fill(gameObjects, 0, n, null);
+
+    }
 
+    private InternalObject[] snapshotObjects() {
+        if (roundObjects.length < gameObjectsByID.size())
+            roundObjects = new InternalObject[2 * gameObjectsByID.size()];
+        gameObjectsByID.copyValues(roundObjects);
+        return roundObjects;
     }
 
     public double getEnergonDifference() {
-        double diff = 0.;
-        for (InternalObject o : gameObjectsByID.values())
+        return (energonTotals[Team.A.ordinal()] - energonTotals[Team.B.ordinal()]) / 1e6;
+    }
+
+    private static long energonUnits(double energon) {
+        return Math.round(energon * 1e6);
+    }
+
+    /**
+     * Should be called once a new robot has its type and energon set.
+     */
+    public void notifyRobotAdded(InternalRobot r) {
+        if (!exists(r))
+            return;
+        int t = r.getTeam().ordinal();
+        robotCounts[t][r.type.ordinal()]++;
+        unitCounts[t]++;
+        energonTotals[t] += energonUnits(r.getEnergonLevel());
+    }
+
+    public void notifyEnergonChanged(InternalRobot r, double oldEnergon) {
+        if (exists(r))
+            energonTotals[r.getTeam().ordinal()] += energonUnits(r.getEnergonLevel()) - energonUnits(oldEnergon);
+    }
+
+    /**
+     * Recounts the robots and their energon, and reports an error if the
+     * counts we've been keeping don't match.
+     */
+    private void checkUnitCounts() {
+        int[][] counts = new int[teams.length][RobotType.values().length];
+        long[] energon = new long[teams.length];
+        for (int i = 0; i < gameObjectsByID.size(); i++) {
+            InternalObject o = gameObjectsByID.valueAt(i);
             if (o instanceof InternalRobot) {
-                double energon = ((InternalRobot) o).getEnergonLevel();
-                if (o.getTeam() == Team.A)
-                    diff += energon;
-                else if (o.getTeam() == Team.B)
-                    diff -= energon;
+                InternalRobot r = (InternalRobot) o;
+                counts[r.getTeam().ordinal()][r.type.ordinal()]++;
+                energon[r.getTeam().ordinal()] += energonUnits(r.getEnergonLevel());
+            }
+        }
+        for (int t = 0; t < teams.length; t++) {
+            if (!Arrays.equals(counts[t], robotCounts[t]) || energon[t] != energonTotals[t]) {
+                ErrorReporter.report("Internal Error: unit counts for team " + teams[t] + " are wrong in round " + currentRound);
+                robotCounts[t] = counts[t];
+                energonTotals[t] = energon[t];
+                int total = 0;
+                for (int c : counts[t])
+                    total += c;
+                unitCounts[t] = total;
             }
-        return diff;
+        }
     }
     
     public int getMineDifference() {
-        int diff = 0;
-        for (Entry<MapLocation, Team> o : mineLocations.entrySet())
-            if (o.getValue() == Team.A)
-            	diff++;
-            else if (o.getValue() == Team.B)
-            	diff--;
-        return diff;
+        return mineCounts[Team.A.ordinal()] - mineCounts[Team.B.ordinal()];
     }
     
     public int getNumCapturing(Team team) {
@@ -169,11 +266,12 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public void processEndOfRound() {
         // process all gameobjects
-        InternalObject[] gameObjects = new InternalObject[gameObjectsByID.size()];
-        gameObjects = gameObjectsByID.values().toArray(gameObjects);
-        for (int i = 0; i < gameObjects.length; i++) {
+        InternalObject[] gameObjects = snapshotObjects();
+        int n = gameObjectsByID.size();
+        for (int i = 0; i < n; i++) {
             gameObjects[i].processEndOfRound();
         }
+        Arrays.fill(gameObjects, 0, n, null);
         removeDead();
         
         addSignal(new FluxChangeSignal(teamResources));
@@ -194,7 +292,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
             	InternalRobot HQB = baseHQs.get(Team.B);
             	double diff = HQA.getEnergonLevel() - HQB.getEnergonLevel();
             	
-            	double campdiff = getEncampmentsByTeam(Team.A).size() - getEncampmentsByTeam(Team.B).size();
+            	double campdiff = countEncampments(Team.A) - countEncampments(Team.B);
             	
             	if (!(
             			// first tie breaker - encampment count
@@ -217,6 +315,9 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         	}
         }
 
+        if (checkUnitCounts)
+            checkUnitCounts();
+
         if (winner != null) {
             running = false;
             for (InternalObject o : gameObjectsByID.values()) {
@@ -253,11 +354,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
     
     public int countEncampments(Team t) {
-    	int total = 0;
-    	Iterable<MapLocation> camps = getEncampmentsByTeam(t);
-    	for (MapLocation camp : camps)
-    		total++;
-    	return total;
+    	return encampments.count(t);
     }
 
     public DominationFactor getDominationFactor(Team winner) {
@@ -291,7 +388,17 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
 
     public InternalObject getObject(MapLocation loc, RobotLevel level) {
-        return gameObjectsByLoc.get(new MapLocation3D(loc, level));
+        int index = gameMap.getLocationIndex(loc);
+        return index < 0 ? null : gameObjectsByLoc[level.ordinal()][index];
+    }
+
+    private void setObject(MapLocation loc, RobotLevel level, InternalObject o) {
+        int index = gameMap.getLocationIndex(loc);
+        if (index < 0) {
+            ErrorReporter.report("Internal Error: " + o + " is off the map at " + loc);
+            return;
+        }
+        gameObjectsByLoc[level.ordinal()][index] = o;
     }
 
     public <T extends InternalObject> T getObjectOfType(MapLocation loc, RobotLevel level, Class<T> cl) {
@@ -309,50 +416,107 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         else
             return null;
     }
+
+    /**
+     * Same as getRobot(new MapLocation(x, y), level), but doesn't allocate a MapLocation.
+     */
+    public InternalRobot getRobot(int x, int y, RobotLevel level) {
+        int index = gameMap.getLocationIndex(x, y);
+        InternalObject obj = index < 0 ? null : gameObjectsByLoc[level.ordinal()][index];
+        if (obj instanceof InternalRobot)
+            return (InternalRobot) obj;
+        else
+            return null;
+    }
     
-    public Map<MapLocation, Team> getMineMaps() {
-    	return mineLocations;
+    /**
+     * Returns the locations of all the mines on the map, ordered by x and then by y.
+     */
+    public List<MapLocation> getMineLocations() {
+    	List<MapLocation> locs = new ArrayList<MapLocation>();
+    	for (int i = 0; i < mines.length; i++)
+    		if (mines[i] != 0)
+    			locs.add(gameMap.getLocationByIndex(i));
+    	return locs;
     }
     
-    public Set<MapLocation> getKnownMineMap(Team t) {
-    	return knownMineLocations.get(t);
+    /**
+     * Returns the locations of the mines within radiusSquared of center, in the same
+     * order as getMineLocations().  Only the locations near center are checked.
+     */
+    public List<MapLocation> getMineLocations(MapLocation center, int radiusSquared) {
+    	List<MapLocation> locs = new ArrayList<MapLocation>();
+    	if (radiusSquared < 0)
+    		return locs;
+    	int radius = (int) Math.sqrt(radiusSquared);
+    	MapLocation origin = gameMap.getMapOrigin();
+    	int minX = Math.max(center.x - radius, origin.x);
+    	int maxX = Math.min(center.x + radius, origin.x + gameMap.getWidth() - 1);
+    	int minY = Math.max(center.y - radius, origin.y);
+    	int maxY = Math.min(center.y + radius, origin.y + gameMap.getHeight() - 1);
+    	for (int x = minX; x <= maxX; x++) {
+    		int index = (x - origin.x) * gameMap.getHeight() + (minY - origin.y);
+    		for (int y = minY; y <= maxY; y++, index++) {
+    			if (mines[index] == 0)
+    				continue;
+    			int dx = x - center.x, dy = y - center.y;
+    			if (dx * dx + dy * dy <= radiusSquared)
+    				locs.add(gameMap.getLocationByIndex(index));
+    		}
+    	}
+    	return locs;
     }
     
     public MapLocation[] getKnownMines(Team t) {
     	ArrayList<MapLocation> locs = new ArrayList<MapLocation>();
-    	for (MapLocation m : knownMineLocations.get(t)) {
-    		if (mineLocations.get(m) != null && mineLocations.get(m) != t)
-    			locs.add(m);
+    	BitSet known = knownMineLocations.get(t);
+    	for (int i = known.nextSetBit(0); i >= 0; i = known.nextSetBit(i + 1)) {
+    		if (mines[i] != 0 && mines[i] != t.ordinal() + 1)
+    			locs.add(gameMap.getLocationByIndex(i));
     	}
     	return locs.toArray(new MapLocation[]{});
     }
     
     public void addKnownMineLocation(Team t, MapLocation loc) {
-    	knownMineLocations.get(t).add(loc);
+    	int index = gameMap.getLocationIndex(loc);
+    	if (index >= 0)
+    		knownMineLocations.get(t).set(index);
     }
     
     
     public boolean isKnownMineLocation(Team t, MapLocation loc) {
-    	return knownMineLocations.get(t).contains(loc);
+    	int index = gameMap.getLocationIndex(loc);
+    	return index >= 0 && knownMineLocations.get(t).get(index);
     }
     
     public void addMine(Team t, MapLocation loc) {
-    	if(mineLocations.get(loc) == null) {
-    		mineLocations.put(loc, t);
+    	int index = gameMap.getLocationIndex(loc);
+    	if (index >= 0 && mines[index] == 0) {
+    		mines[index] = (byte) (t.ordinal() + 1);
+    		mineCounts[t.ordinal()]++;
     		if(t==Team.A || t==Team.B)
     			addKnownMineLocation(t, loc);
     	}
     }
     
     public void removeMines(Team t, MapLocation loc) {
-    	mineLocations.remove(loc);
-    	knownMineLocations.get(t).remove(loc);
+    	int index = gameMap.getLocationIndex(loc);
+    	if (index < 0)
+    		return;
+    	if (mines[index] != 0) {
+    		mineCounts[mines[index] - 1]--;
+    		mines[index] = 0;
+    	}
+    	knownMineLocations.get(t).clear(index);
     	if (t != Team.NEUTRAL)
-    		knownMineLocations.get(t.opponent()).remove(loc);
+    		knownMineLocations.get(t.opponent()).clear(index);
     }
     
     public Team getMine(MapLocation loc) {
-    	return mineLocations.get(loc);
+    	int index = gameMap.getLocationIndex(loc);
+    	if (index < 0 || mines[index] == 0)
+    		return null;
+    	return teams[mines[index] - 1];
     }
     
     public void researchUpgrade(Team t, Upgrade u) {
@@ -378,8 +542,11 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         if (gameObjectsByID.containsKey(o.getID()))
             return;
         gameObjectsByID.put(o.getID(), o);
+        spatialIndex.add(o, o.getLocation());
+        sharedVision.add(o, o.getLocation());
+        sensingEpoch++;
         if (o.getLocation() != null) {
-            gameObjectsByLoc.put(new MapLocation3D(o.getLocation(), o.getRobotLevel()), o);
+            setObject(o.getLocation(), o.getRobotLevel(), o);
         }
 //        if (o instanceof InternalEncampment)
 //        {
@@ -388,32 +555,34 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
     
     public boolean isEncampment(MapLocation loc) {
-    	return encampmentMap.containsKey(loc);
+    	return encampments.getOwner(loc) != null;
     }
     
     public void addEncampment(MapLocation camp, Team team) {
-    	encampments.add(camp);
-    	encampmentMap.put(camp, team);
+    	encampments.setOwner(camp, team);
     }
     
     public Team getEncampment(MapLocation loc) {
-    	return encampmentMap.get(loc);
+    	return encampments.getOwner(loc);
     }
     
     public List<MapLocation> getAllEncampments() {
-    	return encampments;
+    	return encampments.getAll();
     }
     
+    /**
+     * Returns the encampments owned by a team, in the same order as getAllEncampments().
+     */
     public List<MapLocation> getEncampmentsByTeam(final Team t) {
-    	ArrayList<MapLocation> camps = new ArrayList<MapLocation>();
-    	for (Entry<MapLocation, Team> entry : encampmentMap.entrySet())
-    		if (entry.getValue() == t)
-    			camps.add(entry.getKey());
-        return camps;
+    	return encampments.getByTeam(t);
     }
     
-    public Map<MapLocation, Team> getEncampmentMap() {
-    	return encampmentMap;
+    /**
+     * Returns the encampments within radiusSquared of center, in the same order as
+     * getAllEncampments().
+     */
+    public List<MapLocation> getEncampmentsWithinRadiusSq(MapLocation center, int radiusSquared) {
+    	return encampments.getWithinRadiusSq(center, radiusSquared);
     }
 
     public Collection<InternalObject> allObjects() {
@@ -423,24 +592,28 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     // TODO: move stuff to here
     // should only be called by InternalObject.setLocation
     public void notifyMovingObject(InternalObject o, MapLocation oldLoc, MapLocation newLoc) {
+        // the object moves even if something is wrong, so keep the index up to date
+        if (exists(o)) {
+            spatialIndex.move(o, oldLoc, newLoc);
+            sharedVision.move(o, oldLoc, newLoc);
+        }
+        sensingEpoch++;
         if (oldLoc != null) {
-            MapLocation3D oldLoc3D = new MapLocation3D(oldLoc, o.getRobotLevel());
-            if (gameObjectsByLoc.get(oldLoc3D) != o) {
+            if (getObject(oldLoc, o.getRobotLevel()) != o) {
                 ErrorReporter.report("Internal Error: invalid oldLoc in notifyMovingObject");
                 return;
             }
-            gameObjectsByLoc.remove(oldLoc3D);
+            setObject(oldLoc, o.getRobotLevel(), null);
         }
         if (newLoc != null) {
-            gameObjectsByLoc.put(new MapLocation3D(newLoc, o.getRobotLevel()), o);
+            setObject(newLoc, o.getRobotLevel(), o);
         }
     }
 
     public void removeObject(InternalObject o) {
         if (o.getLocation() != null) {
-            MapLocation3D loc3D = new MapLocation3D(o.getLocation(), o.getRobotLevel());
-            if (gameObjectsByLoc.get(loc3D) == o)
-                gameObjectsByLoc.remove(loc3D);
+            if (getObject(o.getLocation(), o.getRobotLevel()) == o)
+                setObject(o.getLocation(), o.getRobotLevel(), null);
             else
             	if (o instanceof InternalRobot) {
             		InternalRobot ir = (InternalRobot) o;
@@ -453,8 +626,19 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         } else
             System.out.println("Couldn't remove " + o + " from the game");
 
-        if (gameObjectsByID.get(o.getID()) == o)
+        if (gameObjectsByID.get(o.getID()) == o) {
             gameObjectsByID.remove(o.getID());
+            spatialIndex.remove(o, o.getLocation());
+            sharedVision.remove(o, o.getLocation());
+            sensingEpoch++;
+            if (o instanceof InternalRobot) {
+                InternalRobot r = (InternalRobot) o;
+                int t = r.getTeam().ordinal();
+                robotCounts[t][r.type.ordinal()]--;
+                unitCounts[t]--;
+                energonTotals[t] -= energonUnits(r.getEnergonLevel());
+            }
+        }
 
         if (o instanceof InternalRobot) {
             InternalRobot r = (InternalRobot) o;
@@ -473,16 +657,12 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         return gameMap.getTerrainTile(loc);
     }
 
-    // TODO: optimize this too
     public int getUnitCount(Team team) {
-        int result = 0;
-        for (InternalObject o : gameObjectsByID.values()) {
-            if (!(o instanceof InternalRobot))
-                continue;
-            if (((InternalRobot) o).getTeam() == team)
-                result++;
-        }
-        return result;
+        return unitCounts[team.ordinal()];
+    }
+
+    public int getUnitCount(Team team, RobotType type) {
+        return robotCounts[team.ordinal()][type.ordinal()];
     }
     
     public double getSpawnRate(Team team) {
@@ -495,7 +675,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public boolean canMove(RobotLevel level, MapLocation loc) {
 
-        return gameMap.getTerrainTile(loc).isTraversableAtHeight(level) && (gameObjectsByLoc.get(new MapLocation3D(loc, level)) == null);
+        return gameMap.getTerrainTile(loc).isTraversableAtHeight(level) && (getObject(loc, level) == null);
     }
 
     public void splashDamageGround(MapLocation loc, double damage, double falloutFraction) {
@@ -512,43 +692,73 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
 
     public InternalObject[] getAllGameObjects() {
-        return gameObjectsByID.values().toArray(new InternalObject[gameObjectsByID.size()]);
+        InternalObject[] objects = new InternalObject[gameObjectsByID.size()];
+        gameObjectsByID.copyValues(objects);
+        return objects;
     }
 
     public InternalRobot getRobotByID(int id) {
         return (InternalRobot) getObjectByID(id);
     }
 
+    public void notifyRobotChanged(InternalRobot r) {
+        if (changedCount == changedRobots.length)
+            changedRobots = Arrays.copyOf(changedRobots, 2 * changedCount);
+        changedRobots[changedCount++] = r;
+    }
+
     public Signal[] getAllSignals(boolean includeBytecodesUsedSignal) {
-        ArrayList<InternalRobot> energonChangedRobots = new ArrayList<InternalRobot>();
-        ArrayList<InternalRobot> shieldChangedRobots = new ArrayList<InternalRobot>();
-        ArrayList<InternalRobot> allRobots = null;
-        if (includeBytecodesUsedSignal)
-            allRobots = new ArrayList<InternalRobot>();
-        for (InternalObject obj : gameObjectsByID.values()) {
-            if (!(obj instanceof InternalRobot))
+        // list the robots in the order they were added, like allObjects does
+        Arrays.sort(changedRobots, 0, changedCount, addedOrderComparator);
+        int energonCount = 0, shieldCount = 0;
+        for (int i = 0; i < changedCount; i++) {
+            InternalRobot r = changedRobots[i];
+            if (!exists(r))
                 continue;
-            InternalRobot r = (InternalRobot) obj;
-            if (includeBytecodesUsedSignal)
-                allRobots.add(r);
-            if (r.clearEnergonChanged()) {
-                energonChangedRobots.add(r);
+            if (r.isEnergonChanged())
+                energonCount++;
+            if (r.isShieldChanged())
+                shieldCount++;
+        }
+        InternalRobot[] energonChangedRobots = new InternalRobot[energonCount];
+        InternalRobot[] shieldChangedRobots = new InternalRobot[shieldCount];
+        energonCount = shieldCount = 0;
+        for (int i = 0; i < changedCount; i++) {
+            InternalRobot r = changedRobots[i];
+            changedRobots[i] = null;
+            if (!exists(r))
+                continue;
+            if (r.clearEnergonChanged())
+                energonChangedRobots[energonCount++] = r;
+            if (r.clearShieldChanged())
+                shieldChangedRobots[shieldCount++] = r;
+        }
+        changedCount = 0;
+        signals.add(new EnergonChangeSignal(energonChangedRobots));
+        signals.add(new ShieldChangeSignal(shieldChangedRobots));
+
+        if (includeBytecodesUsedSignal) {
+            // count the robots the same way they're listed, rather than trusting
+            // unitCounts, so that the array is always the right size
+            int robots = 0;
+            for (int i = 0; i < gameObjectsByID.size(); i++) {
+                if (gameObjectsByID.valueAt(i) instanceof InternalRobot)
+                    robots++;
             }
-            if (r.clearShieldChanged()) {
-            	shieldChangedRobots.add(r);
+            InternalRobot[] allRobots = new InternalRobot[robots];
+            robots = 0;
+            for (int i = 0; i < gameObjectsByID.size(); i++) {
+                InternalObject obj = gameObjectsByID.valueAt(i);
+                if (obj instanceof InternalRobot)
+                    allRobots[robots++] = (InternalRobot) obj;
             }
+            signals.add(new BytecodesUsedSignal(allRobots));
         }
-        signals.add(new EnergonChangeSignal(energonChangedRobots.toArray(new InternalRobot[]{})));
-        signals.add(new ShieldChangeSignal(shieldChangedRobots.toArray(new InternalRobot[]{})));
-
-        if (includeBytecodesUsedSignal)
-            signals.add(new BytecodesUsedSignal(allRobots.toArray(new InternalRobot[]{})));
         return signals.toArray(new Signal[signals.size()]);
     }
     
     public int getMessage(int channel) {
-    	Integer val = radio.get(channel);
-    	return val == null ? 0 : val;
+    	return radio[channel];
     }
     
     public boolean hasUpgrade(Team t, Upgrade upgrade) {
@@ -560,9 +770,29 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     		getBaseHQ(t.opponent()).suicide();
     	} else {
     		upgrades.get(t).add(upgrade);
+    		if (upgrade == Upgrade.VISION) {
+    			sharedVision.clear(t);
+    			sensingEpoch++;
+    		}
     	}
     }
 
+    /**
+     * Returns a number that changes whenever an object appears, moves or is
+     * removed, or a team's vision changes.  Anything a robot senses stays the
+     * same for as long as this does.
+     */
+    public int getSensingEpoch() {
+        return sensingEpoch;
+    }
+
+    /**
+     * Returns true if the location is within radiusSquared of any robot on team t.
+     */
+    public boolean canTeamSense(Team t, MapLocation loc, int radiusSquared) {
+        return sharedVision.canSense(t, loc, radiusSquared);
+    }
+
     public RoundStats getRoundStats() {
         return roundStats;
     }
@@ -582,6 +812,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         // if the robot is dead, it won't be in the map any more
         if (r != null) {
             r.setBytecodesUsed(RobotMonitor.getBytecodesUsed());
+            gameStats.addAllocatedBytes(r.getTeam(), RobotMonitor.getAllocatedBytes());
             r.processEndOfTurn();
         }
     }
@@ -593,13 +824,22 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         deadRobots.add(r);
     }
 
+    /**
+     * Removes the robots that have died since the last call.  Each robot is
+     * removed once and then forgotten, even if it was reported more than once.
+     */
     public void removeDead() {
         boolean current = false;
-        for (InternalRobot r : deadRobots) {
-            if (r.getID() == RobotMonitor.getCurrentRobotID())
+        int currentID = RobotMonitor.getCurrentRobotID();
+        for (int i = 0; i < deadRobots.size(); i++) {
+            InternalRobot r = deadRobots.get(i);
+            if (r.getID() == currentID)
                 current = true;
-            visitSignal(new DeathSignal(r));
+            // a robot that keeps taking damage is reported each time
+            if (getObjectByID(r.getID()) == r)
+                visitSignal(new DeathSignal(r));
         }
+        deadRobots.clear();
         if (current)
             throw new RobotDeathException();
     }
@@ -625,22 +865,23 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         
         switch (attacker.type) {
 		case SOLDIER:
-			Direction dir = Direction.NORTH;
-	    	MapLocation nearby;
 	    	InternalRobot nearbyrobot;
-	    	ArrayList<InternalRobot> todamage = new ArrayList<InternalRobot>();
-	    	do {
-	    		nearby = targetLoc.add(dir);
-	    		nearbyrobot = getRobot(nearby, level);
+	    	// taking damage doesn't remove anyone until removeDead, so we can
+	    	// count the enemies first and then go around again to damage them
+	    	int enemies = 0;
+	    	for (Direction dir : soldierAttackDirections) {
+	    		nearbyrobot = getRobot(targetLoc.x + dir.dx, targetLoc.y + dir.dy, level);
 	    		if (nearbyrobot != null)
 	    			if (nearbyrobot.getTeam() != attacker.getTeam())
-	    				todamage.add(nearbyrobot);
-	    		dir = dir.rotateLeft();
-	    	} while (dir != Direction.NORTH);
-	    	if (todamage.size()>0) {
-	            double damage = attacker.type.attackPower/todamage.size();
-	            for (InternalRobot r : todamage)
-	            	r.takeDamage(damage, attacker);
+	    				enemies++;
+	    	}
+	    	if (enemies>0) {
+	            double damage = attacker.type.attackPower/enemies;
+	            for (Direction dir : soldierAttackDirections) {
+	            	nearbyrobot = getRobot(targetLoc.x + dir.dx, targetLoc.y + dir.dy, level);
+	            	if (nearbyrobot != null && nearbyrobot.getTeam() != attacker.getTeam())
+	            		nearbyrobot.takeDamage(damage, attacker);
+	            }
 	    	}
 			break;
 		case ARTILLERY:
@@ -648,7 +889,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 			for (int dx = -1; dx <= 1; dx++)
 				for (int dy = -1; dy <= 1; dy++) {
 
-					target = getRobot(targetLoc.add(dx, dy), level);
+					target = getRobot(targetLoc.x + dx, targetLoc.y + dy, level);
 
 					if (target != null)
 						if (dx == 0 && dy == 0)
@@ -689,8 +930,11 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
 
     public void visitBroadcastSignal(BroadcastSignal s) {        
-    	radio.putAll(s.broadcastMap);
-    	s.broadcastMap = null;
+    	for (int i = 0; i < s.broadcastCount; i++)
+    		radio[s.broadcastChannels[i]] = s.broadcastData[i];
+    	// the robot will reuse these
+    	s.broadcastChannels = null;
+    	s.broadcastData = null;
         addSignal(s);
     }
 
@@ -720,7 +964,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
             	setWinner(r.getTeam().opponent(), getDominationFactor(r.getTeam().opponent()));
             } else if (r.type.isEncampment)
             {
-            	encampmentMap.put(r.getLocation(), Team.NEUTRAL);
+            	encampments.setOwner(r.getLocation(), Team.NEUTRAL);
             }
         }
     }
@@ -805,7 +1049,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         
         if (s.getType().isEncampment)
         {
-        	encampmentMap.put(s.getLoc(), s.getTeam());
+        	encampments.setOwner(s.getLoc(), s.getTeam());
         }
 
         //note: this also adds the signal
@@ -851,13 +1095,11 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     	MapLocation targetLoc = medbay.getLocation();
     	RobotLevel level = RobotLevel.ON_GROUND;
     	
-    	int dist = (int)Math.sqrt(medbay.type.attackRadiusMaxSquared);
+    	int[] offsets = RadiusOffsets.get(medbay.type.attackRadiusMaxSquared);
     	InternalRobot target;
-        for (int dx=-dist; dx<=dist; dx++)
-        	for (int dy=-dist; dy<=dist; dy++)
+        for (int i = 0; i < offsets.length; i += 2)
         	{
-        		if (dx*dx+dy*dy > medbay.type.attackRadiusMaxSquared) continue;
-        		target = getRobot(targetLoc.add(dx, dy), level);
+        		target = getRobot(targetLoc.x + offsets[i], targetLoc.y + offsets[i + 1], level);
         		if (target != null)
         			if (target.getTeam() == medbay.getTeam() && target.type != RobotType.HQ)
         				target.takeDamage(-medbay.type.attackPower, medbay);
@@ -871,13 +1113,11 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     	MapLocation targetLoc = shields.getLocation();
     	RobotLevel level = RobotLevel.ON_GROUND;
     	
-    	int dist = (int)Math.sqrt(shields.type.attackRadiusMaxSquared);
+    	int[] offsets = RadiusOffsets.get(shields.type.attackRadiusMaxSquared);
     	InternalRobot target;
-        for (int dx=-dist; dx<=dist; dx++)
-        	for (int dy=-dist; dy<=dist; dy++)
+        for (int i = 0; i < offsets.length; i += 2)
         	{
-        		if (dx*dx+dy*dy > shields.type.attackRadiusMaxSquared) continue;
-        		target = getRobot(targetLoc.add(dx, dy), level);
+        		target = getRobot(targetLoc.x + offsets[i], targetLoc.y + offsets[i + 1], level);
         		if (target != null)
         			if (target.getTeam() == shields.getTeam())
         				target.takeShieldedDamage(-shields.type.attackPower);
@@ -901,6 +1141,18 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     // *****************************
     private static MapLocation origin = new MapLocation(0, 0);
 
+    // the squares around the target that a soldier's attack hits, in the
+    // order they take damage
+    private static final Direction[] soldierAttackDirections = new Direction[8];
+
+    static {
+        Direction dir = Direction.NORTH;
+        for (int i = 0; i < soldierAttackDirections.length; i++) {
+            soldierAttackDirections[i] = dir;
+            dir = dir.rotateLeft();
+        }
+    }
+
     protected static boolean canAttackSquare(InternalRobot ir, MapLocation loc) {
         MapLocation myLoc = ir.getLocation();
         int d = myLoc.distanceSquaredTo(loc);
@@ -930,15 +1182,19 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
             return (dotProduct * dotProduct >= rhs - 0.00001d);
     }
 
-    // TODO: make a faster implementation of this
+    /**
+     * Returns the objects whose squared distance from center is at most outerRadiusSquared
+     * and more than innerRadiusSquared, in the same order as allObjects.
+     */
+    public List<InternalObject> getAllObjectsWithinRadiusDonutSq(MapLocation center, int outerRadiusSquared, int innerRadiusSquared) {
+        return spatialIndex.getObjectsWithinRadiusDonutSq(center, outerRadiusSquared, innerRadiusSquared);
+    }
+
     protected InternalRobot[] getAllRobotsWithinRadiusDonutSq(MapLocation center, int outerRadiusSquared, int innerRadiusSquared) {
         ArrayList<InternalRobot> robots = new ArrayList<InternalRobot>();
 
-        for (InternalObject o : gameObjectsByID.values()) {
-            if (!(o instanceof InternalRobot))
-                continue;
-            if (o.getLocation() != null && o.getLocation().distanceSquaredTo(center) <= outerRadiusSquared
-                    && o.getLocation().distanceSquaredTo(center) > innerRadiusSquared)
+        for (InternalObject o : spatialIndex.getObjectsWithinRadiusDonutSq(center, outerRadiusSquared, innerRadiusSquared)) {
+            if (o instanceof InternalRobot)
                 robots.add((InternalRobot) o);
         }
 
@@ -947,25 +1203,20 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     // TODO: make a faster implementation of this
     public MapLocation[] getAllMapLocationsWithinRadiusSq(MapLocation center, int radiusSquared) {
-        ArrayList<MapLocation> locations = new ArrayList<MapLocation>();
-
-        int radius = (int) Math.sqrt(radiusSquared);
-
-        int minXPos = center.x - radius;
-        int maxXPos = center.x + radius;
-        int minYPos = center.y - radius;
-        int maxYPos = center.y + radius;
-
-        for (int x = minXPos; x <= maxXPos; x++) {
-            for (int y = minYPos; y <= maxYPos; y++) {
-                MapLocation loc = new MapLocation(x, y);
-                TerrainTile tile = gameMap.getTerrainTile(loc);
-                if (!tile.equals(TerrainTile.OFF_MAP) && loc.distanceSquaredTo(center) < radiusSquared)
-                    locations.add(loc);
-            }
+        // this one leaves out the squares at exactly radiusSquared
+        int[] offsets = RadiusOffsets.get(radiusSquared - 1);
+        int n = 0;
+        for (int i = 0; i < offsets.length; i += 2)
+            if (gameMap.getLocationIndex(center.x + offsets[i], center.y + offsets[i + 1]) >= 0)
+                n++;
+        MapLocation[] locations = new MapLocation[n];
+        n = 0;
+        for (int i = 0; i < offsets.length; i += 2) {
+            int index = gameMap.getLocationIndex(center.x + offsets[i], center.y + offsets[i + 1]);
+            if (index >= 0)
+                locations[n++] = gameMap.getLocationByIndex(index);
         }
-
-        return locations.toArray(new MapLocation[locations.size()]);
+        return locations;
     }
 
     public double resources(Team t) {
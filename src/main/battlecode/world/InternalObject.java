@@ -10,6 +10,9 @@ public abstract class InternalObject extends BaseObject {
     protected final RobotLevel myHeight;
     protected final GameWorld myGameWorld;
 
+    // the order in which this object was added to the world, see SpatialIndex
+    int addedOrder = -1;
+
     protected InternalObject(GameWorld gw, MapLocation loc, RobotLevel height, Team t) {
         super(gw, t);
         myGameWorld = gw;
@@ -1,6 +1,6 @@
 package battlecode.world;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 import battlecode.common.Direction;
@@ -38,6 +38,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
      * first index is robot type, second is direction, third is x or y
      */
     private static final Map<RobotType, int[][][]> offsets = GameMap.computeVisibleOffsets();
+    // Direction.values() copies the array every time, so keep our own copies
+    private static final Direction[] neighborDirections = Arrays.copyOf(Direction.values(), 8);
+    private static final Direction[] pickaxeDirections = {Direction.NORTH, Direction.EAST, Direction.WEST, Direction.SOUTH};
     /**
      * number of bytecodes used in the most recent round
      */
@@ -49,7 +52,10 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
 
     private volatile int turnsUntilMovementIdle;
     private volatile int turnsUntilAttackIdle;
-    private volatile HashMap<Integer, Integer> broadcastMap = new HashMap<Integer, Integer>();
+    // the channels and data broadcast this turn, in order; reused every turn
+    private int[] broadcastChannels = new int[16];
+    private int[] broadcastData = new int[16];
+    private int broadcastCount = 0;
     private boolean broadcasted = false;
     
     protected volatile boolean regen;
@@ -90,6 +96,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         mapMemory = gw.getMapMemory(getTeam());
         saveMapMemory(null, loc, false);
         controlBits = 0;
+        gw.notifyRobotAdded(this);
+        // energonChanged and shieldChanged start out set
+        gw.notifyRobotChanged(this);
 
 //        if (spawnedRobot) {
 //            turnsUntilMovementIdle = GameConstants.WAKE_DELAY;
@@ -142,14 +151,7 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         super.processBeginningOfRound();
         
         // TODO we can do beginning of round damage/healing/etc here
-    	// TODO also, resoruce generation is done here
-        // TODO CORY FIX IT
-        if (type == RobotType.HQ)
-        	myGameWorld.adjustResources(getTeam(), GameConstants.HQ_POWER_PRODUCTION);
-        else if (type == RobotType.GENERATOR)
-        	myGameWorld.adjustResources(getTeam(), GameConstants.GENERATOR_POWER_PRODUCTION);
-        else if (type == RobotType.SUPPLIER)
-        	myGameWorld.adjustSpawnRate(getTeam(), GameConstants.HQ_SPAWN_DELAY_CONSTANT);
+        // resource generation is done by GameWorld.processBeginningOfRound
     }
 
     public void processBeginningOfTurn() {
@@ -192,9 +194,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         super.processEndOfTurn();
         
         // autosend aggregated broadcast
-        if (broadcasted) myGameWorld.visitSignal(new BroadcastSignal(this, broadcastMap));
+        if (broadcasted) myGameWorld.visitSignal(new BroadcastSignal(this, broadcastChannels, broadcastData, broadcastCount));
         
-    	broadcastMap = new HashMap<Integer, Integer>();
+        broadcastCount = 0;
         broadcasted = false;
         
       	// quick hack to make mining work. move me out later
@@ -203,8 +205,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         		if (--miningRounds==0) {
         			myGameWorld.visitSignal(new MineSignal(getLocation(), getTeam(), MineSignal.ADD));
         			if(myGameWorld.hasUpgrade(getTeam(), Upgrade.PICKAXE)) {
-        				for(Direction d: new Direction[]{Direction.NORTH, Direction.EAST, Direction.WEST, Direction.SOUTH}) {
-        					myGameWorld.visitSignal(new MineSignal(getLocation().add(d), getTeam(), MineSignal.ADD));
+        				for(Direction d: pickaxeDirections) {
+        					MapLocation loc = myGameWorld.getGameMap().getLocation(getLocation().x + d.dx, getLocation().y + d.dy);
+        					myGameWorld.visitSignal(new MineSignal(loc, getTeam(), MineSignal.ADD));
         				}
         			}
         		}
@@ -267,9 +270,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         boolean nearbyAlly = false;
         boolean nearbyEnemy = false;
         
-    	for(int i=0; i<8; i++) {
-    		Robot nearby = myGameWorld.getRobot(this.getLocation().add(Direction.values()[i]),
-    				RobotLevel.ON_GROUND);
+        MapLocation loc = getLocation();
+    	for(Direction d: neighborDirections) {
+    		Robot nearby = myGameWorld.getRobot(loc.x + d.dx, loc.y + d.dy, RobotLevel.ON_GROUND);
     		if(nearby != null) {
     			if(nearby.getTeam() == getTeam()) nearbyAlly = true;
     			else if(nearby.getTeam() == getTeam().opponent()) nearbyEnemy = true;
@@ -296,7 +299,7 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         // shield decay
         if (myShieldLevel > 0.0)
         {
-        	shieldChanged = true;
+        	setShieldChanged();
         	myShieldLevel = Math.max(0.0, myShieldLevel-GameConstants.SHIELD_DECAY_RATE);
         }
     }
@@ -374,7 +377,7 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         if (myShieldLevel > GameConstants.SHIELD_CAP) {
         	myShieldLevel = GameConstants.SHIELD_CAP;
         }
-        shieldChanged = true;
+        setShieldChanged();
 
         if (myShieldLevel <= 0) {
         	double diff = -myShieldLevel;
@@ -385,11 +388,13 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     }
 
     public void changeEnergonLevel(double amount) {
+        double oldEnergon = myEnergonLevel;
         myEnergonLevel += amount;
         if (myEnergonLevel > getMaxEnergon()) {
             myEnergonLevel = getMaxEnergon();
         }
-        energonChanged = true;
+        setEnergonChanged();
+        myGameWorld.notifyEnergonChanged(this, oldEnergon);
 
         if (myEnergonLevel <= 0) {
             processLethalDamage();
@@ -400,6 +405,28 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         myGameWorld.notifyDied(this);
     }
 
+    // a robot is on the world's list of changed robots whenever one of
+    // these flags is set, until getAllSignals clears them
+    private void setEnergonChanged() {
+        if (!energonChanged && !shieldChanged)
+            myGameWorld.notifyRobotChanged(this);
+        energonChanged = true;
+    }
+
+    private void setShieldChanged() {
+        if (!energonChanged && !shieldChanged)
+            myGameWorld.notifyRobotChanged(this);
+        shieldChanged = true;
+    }
+
+    public boolean isEnergonChanged() {
+        return energonChanged;
+    }
+
+    public boolean isShieldChanged() {
+        return shieldChanged;
+    }
+
     public boolean clearEnergonChanged() {
         boolean wasChanged = energonChanged;
         energonChanged = false;
@@ -427,7 +454,13 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     }
 
     public void addBroadcast(int channel, int data) {
-    	broadcastMap.put(channel, data);
+    	if (broadcastCount == broadcastChannels.length) {
+    		broadcastChannels = Arrays.copyOf(broadcastChannels, 2 * broadcastCount);
+    		broadcastData = Arrays.copyOf(broadcastData, 2 * broadcastCount);
+    	}
+    	broadcastChannels[broadcastCount] = channel;
+    	broadcastData[broadcastCount] = data;
+    	broadcastCount++;
         broadcasted = true;
     }
     
@@ -527,9 +560,12 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         return mapMemory;
     }
 
-    // TODO this year all robots have 360 vision, probably can make this better
     public void saveMapMemory(MapLocation oldLoc, MapLocation newLoc,
                               boolean fringeOnly) {
+    	if (type.sensorAngle >= 360.0) {
+    		mapMemory.rememberLocations(newLoc, type.sensorRadiusSquared);
+    		return;
+    	}
     	int[][] myOffsets;
     	if (oldLoc == null)
     		myOffsets = offsets.get(type)[0];
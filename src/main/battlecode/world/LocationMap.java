@@ -0,0 +1,110 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+
+/**
+ * A map from locations to values.  MapLocation.hashCode puts many nearby
+ * locations in the same bucket of a HashMap, so this packs the coordinates
+ * into a single long key, mixes its bits and uses open addressing instead.
+ * <p/>
+ * Entries can't be removed, which is all the world needs so far.
+ */
+class LocationMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int size;
+
+    LocationMap() {
+        this(8);
+    }
+
+    /**
+     * Makes a map that can hold expectedSize entries without growing.
+     */
+    LocationMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < 2 * expectedSize)
+            capacity *= 2;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (used[i] && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int x, int y) {
+        int i = slot(key(x, y));
+        return used[i] ? (V) values[i] : null;
+    }
+
+    V get(MapLocation loc) {
+        return get(loc.x, loc.y);
+    }
+
+    boolean containsKey(int x, int y) {
+        return used[slot(key(x, y))];
+    }
+
+    boolean containsKey(MapLocation loc) {
+        return containsKey(loc.x, loc.y);
+    }
+
+    /**
+     * Associates value with (x, y) and returns the old value, or null if there wasn't one.
+     */
+    @SuppressWarnings("unchecked")
+    V put(int x, int y, V value) {
+        long key = key(x, y);
+        int i = slot(key);
+        if (used[i]) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        // keep the table at most half full so probes stay short
+        if (++size * 2 > keys.length)
+            grow();
+        return null;
+    }
+
+    V put(MapLocation loc, V value) {
+        return put(loc.x, loc.y, value);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new long[2 * oldKeys.length];
+        values = new Object[keys.length];
+        used = new boolean[keys.length];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (!oldUsed[j])
+                continue;
+            int i = slot(oldKeys[j]);
+            used[i] = true;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+
+/**
+ * A set of locations, backed by a LocationMap.
+ */
+class LocationSet {
+
+    private static final Object PRESENT = new Object();
+
+    private final LocationMap<Object> map;
+
+    LocationSet() {
+        map = new LocationMap<Object>();
+    }
+
+    /**
+     * Makes a set that can hold expectedSize locations without growing.
+     */
+    LocationSet(int expectedSize) {
+        map = new LocationMap<Object>(expectedSize);
+    }
+
+    /**
+     * Adds (x, y) to the set and returns true if it wasn't already there.
+     */
+    boolean add(int x, int y) {
+        return map.put(x, y, PRESENT) == null;
+    }
+
+    boolean add(MapLocation loc) {
+        return add(loc.x, loc.y);
+    }
+
+    boolean contains(int x, int y) {
+        return map.containsKey(x, y);
+    }
+
+    boolean contains(MapLocation loc) {
+        return contains(loc.x, loc.y);
+    }
+
+    int size() {
+        return map.size();
+    }
+}
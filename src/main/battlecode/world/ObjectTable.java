@@ -0,0 +1,121 @@
+package battlecode.world;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Maps IDs to game objects.  IDs are small and handed out in increasing order,
+ * so the objects are stored in an array indexed by ID.  The live objects are also
+ * kept in a list in the order in which they were added, so that they can be
+ * visited without allocating anything and always in the same order.
+ * <p/>
+ * The methods have the same names as the Map methods they replace.
+ */
+class ObjectTable<T> {
+
+    private Object[] byID = new Object[256];
+    private Object[] values = new Object[64];
+    private int size;
+    private int modCount;
+
+    T get(int id) {
+        return id >= 0 && id < byID.length ? cast(byID[id]) : null;
+    }
+
+    boolean containsKey(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Adds an object.  There must not already be an object with this ID.
+     */
+    void put(int id, T o) {
+        if (id >= byID.length)
+            byID = Arrays.copyOf(byID, Math.max(2 * byID.length, id + 1));
+        byID[id] = o;
+        if (size == values.length)
+            values = Arrays.copyOf(values, 2 * size);
+        values[size++] = o;
+        modCount++;
+    }
+
+    T remove(int id) {
+        T o = get(id);
+        if (o == null)
+            return null;
+        byID[id] = null;
+        // deaths are rare compared to lookups, so it's fine for this to be slow
+        for (int i = 0; i < size; i++) {
+            if (values[i] == o) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                values[--size] = null;
+                break;
+            }
+        }
+        modCount++;
+        return o;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the i-th live object, in the order they were added.
+     */
+    T valueAt(int i) {
+        return cast(values[i]);
+    }
+
+    /**
+     * Copies the live objects into dest, which must have room for size() objects.
+     */
+    void copyValues(Object[] dest) {
+        System.arraycopy(values, 0, dest, 0, size);
+    }
+
+    /**
+     * Returns a view of the live objects, in the order they were added.
+     */
+    Collection<T> values() {
+        return valuesView;
+    }
+
+    private final Collection<T> valuesView = new AbstractCollection<T>() {
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private final int expectedModCount = modCount;
+                private int next;
+
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                public T next() {
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    if (next >= size)
+                        throw new NoSuchElementException();
+                    return cast(values[next++]);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        public int size() {
+            return size;
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object o) {
+        return (T) o;
+    }
+}
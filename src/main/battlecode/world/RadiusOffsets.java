@@ -0,0 +1,54 @@
+package battlecode.world;
+
+import java.util.Arrays;
+
+/**
+ * Tables of the squares within a given squared radius of a center square,
+ * shared by everything in the world that needs to visit the squares near
+ * some location.
+ * <p/>
+ * Each table is a flattened array of {dx, dy} pairs, sorted by dx and then
+ * by dy, so callers can walk it with plain ints instead of making a
+ * MapLocation for every square.  The tables must not be modified.
+ */
+final class RadiusOffsets {
+
+    // tables for radii up to this are kept; the radii the engine uses are all
+    // well below it, but players can ask about any radius
+    static final int MAX_CACHED_RADIUS_SQUARED = 256;
+
+    private static final int[] EMPTY = new int[0];
+    private static final int[][] cache = new int[MAX_CACHED_RADIUS_SQUARED + 1][];
+
+    private RadiusOffsets() {
+    }
+
+    /**
+     * Returns the offsets {dx, dy} with dx * dx + dy * dy &lt;= radiusSquared.
+     */
+    static int[] get(int radiusSquared) {
+        if (radiusSquared < 0)
+            return EMPTY;
+        if (radiusSquared > MAX_CACHED_RADIUS_SQUARED)
+            return compute(radiusSquared);
+        synchronized (cache) {
+            int[] offsets = cache[radiusSquared];
+            if (offsets == null)
+                offsets = cache[radiusSquared] = compute(radiusSquared);
+            return offsets;
+        }
+    }
+
+    private static int[] compute(int radiusSquared) {
+        int radius = (int) Math.sqrt(radiusSquared);
+        int[] offsets = new int[2 * (2 * radius + 1) * (2 * radius + 1)];
+        int n = 0;
+        for (int dx = -radius; dx <= radius; dx++)
+            for (int dy = -radius; dy <= radius; dy++)
+                if (dx * dx + dy * dy <= radiusSquared) {
+                    offsets[n++] = dx;
+                    offsets[n++] = dy;
+                }
+        return Arrays.copyOf(offsets, n);
+    }
+}
@@ -11,9 +11,6 @@ import static battlecode.common.GameActionExceptionType.OUT_OF_RANGE;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.Map.Entry;
 
 import battlecode.common.Direction;
 import battlecode.common.GameActionException;
@@ -99,6 +96,18 @@ TODO:
  */
 public class RobotControllerImpl extends ControllerShared implements RobotController, GenericController {
 
+    // the results of the last few senseNearbyGameObjects calls, which stay
+    // good until the world's sensing epoch changes
+    private static final int SENSE_CACHE_SIZE = 4;
+    private final Class<?>[] senseCacheTypes = new Class<?>[SENSE_CACHE_SIZE];
+    private final boolean[] senseCacheWholeMap = new boolean[SENSE_CACHE_SIZE];
+    private final MapLocation[] senseCacheCenters = new MapLocation[SENSE_CACHE_SIZE];
+    private final int[] senseCacheRadii = new int[SENSE_CACHE_SIZE];
+    private final Team[] senseCacheTeams = new Team[SENSE_CACHE_SIZE];
+    private final Object[][] senseCacheResults = new Object[SENSE_CACHE_SIZE][];
+    private int senseCacheEpoch;
+    private int senseCacheNext;
+
     public RobotControllerImpl(GameWorld gw, InternalRobot r) {
         super(gw, r);
     }
@@ -177,7 +186,7 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
         if (robot.type != RobotType.HQ)
             throw new GameActionException(CANT_DO_THAT_BRO, "Only HQs can spawn.");
         assertNotMoving();
-        MapLocation loc = getLocation().add(dir);
+        MapLocation loc = adjacentLocation(dir);
         if (!gameWorld.canMove(type.level, loc))
             throw new GameActionException(GameActionExceptionType.CANT_MOVE_THERE, "That square is occupied.");
 
@@ -299,22 +308,20 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     }
 
     public boolean checkCanSense(MapLocation loc) {
-    	
-        int sensorRadius = robot.type.sensorRadiusSquared + (hasUpgrade(Upgrade.VISION) ? GameConstants.VISION_UPGRADE_BONUS : 0);
+        return checkCanSense(loc, sensorRadiusSquared());
+    }
+
+    private int sensorRadiusSquared() {
+        return robot.type.sensorRadiusSquared + (hasUpgrade(Upgrade.VISION) ? GameConstants.VISION_UPGRADE_BONUS : 0);
+    }
+
+    private boolean checkCanSense(MapLocation loc, int sensorRadius) {
 //    	return getGameObjectsNearLocation(Robot.class, loc, sensorRadius, robot.getTeam()).length > 0;
     	
         if (robot.myLocation.distanceSquaredTo(loc) <= sensorRadius)
         	return true;
         
-        for (InternalObject o : gameWorld.allObjects())
-        {
-        	if  ((Robot.class.isInstance(o)) 
-        			&& o.getTeam() == robot.getTeam()
-        			&& loc.distanceSquaredTo(o.getLocation()) <= sensorRadius)
-        		return true;
-        		
-        }
-        return false;
+        return gameWorld.canTeamSense(robot.getTeam(), loc, sensorRadius);
     	// make global vision work on this.
     	// MAKE SURE YOU CANT GLOBL DEFUSE SHIT OTHERWISE YOURE GUNNA GET G'D
 //        MapLocation myLoc = getLocation();
@@ -335,29 +342,38 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
 
     @SuppressWarnings("unchecked")
     public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type) {
+        T[] cached = getCachedSense(type, true, null, -1, null);
+        if (cached != null)
+            return cached;
         Predicate<InternalObject> p = new Predicate<InternalObject>() {
             public boolean apply(InternalObject o) {
                 return checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
             }
         };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        return cacheSense(type, true, null, -1, null, Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type));
     }
     
     @SuppressWarnings("unchecked")
 	public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type, final int radiusSquared) {
+        T[] cached = getCachedSense(type, false, robot.myLocation, radiusSquared, null);
+        if (cached != null)
+            return cached;
         Predicate<InternalObject> p = new Predicate<InternalObject>() {
             public boolean apply(InternalObject o) {
                 return o.myLocation.distanceSquaredTo(robot.myLocation) <= radiusSquared 
                 		&& checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
             }
         };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        return cacheSense(type, false, robot.myLocation, radiusSquared, null, Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.getAllObjectsWithinRadiusDonutSq(robot.myLocation, radiusSquared, -1), p), type));
     }
 
     @SuppressWarnings("unchecked")
 	public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type, final int radiusSquared, final Team team) {
     	if (team == null)
     		return senseNearbyGameObjects(type, radiusSquared);
+        T[] cached = getCachedSense(type, false, robot.myLocation, radiusSquared, team);
+        if (cached != null)
+            return cached;
         Predicate<InternalObject> p = new Predicate<InternalObject>() {
             public boolean apply(InternalObject o) {
                 return o.myLocation.distanceSquaredTo(robot.myLocation) <= radiusSquared
@@ -365,11 +381,14 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
                 		&& checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
             }
         };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        return cacheSense(type, false, robot.myLocation, radiusSquared, team, Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.getAllObjectsWithinRadiusDonutSq(robot.myLocation, radiusSquared, -1), p), type));
     }
 
     @SuppressWarnings("unchecked")
     public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type, final MapLocation center, final int radiusSquared, final Team team) {
+        T[] cached = getCachedSense(type, false, center, radiusSquared, team);
+        if (cached != null)
+            return cached;
     	if (team == null)
     	{
     		Predicate<InternalObject> p = new Predicate<InternalObject>() {
@@ -378,7 +397,7 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
                     		&& checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
                 }
             };
-            return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+            return cacheSense(type, false, center, radiusSquared, null, Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.getAllObjectsWithinRadiusDonutSq(center, radiusSquared, -1), p), type));
     	}
         Predicate<InternalObject> p = new Predicate<InternalObject>() {
             public boolean apply(InternalObject o) {
@@ -387,7 +406,44 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
                 		&& checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
             }
         };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        return cacheSense(type, false, center, radiusSquared, team, Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.getAllObjectsWithinRadiusDonutSq(center, radiusSquared, -1), p), type));
+    }
+
+    /**
+     * Returns a copy of the result of an earlier senseNearbyGameObjects call
+     * with the same arguments, or null if there isn't one that's still good.
+     * The overload without a radius senses the whole map, and its entry
+     * is marked as such rather than by its center or radius.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T[] getCachedSense(Class<T> type, boolean wholeMap, MapLocation center, int radiusSquared, Team team) {
+        if (senseCacheEpoch != gameWorld.getSensingEpoch()) {
+            Arrays.fill(senseCacheResults, null);
+            senseCacheEpoch = gameWorld.getSensingEpoch();
+            return null;
+        }
+        for (int i = 0; i < SENSE_CACHE_SIZE; i++) {
+            if (senseCacheResults[i] == null || senseCacheTypes[i] != type || senseCacheWholeMap[i] != wholeMap)
+                continue;
+            if (wholeMap || (senseCacheRadii[i] == radiusSquared && senseCacheTeams[i] == team
+                    && (center == null ? senseCacheCenters[i] == null : center.equals(senseCacheCenters[i]))))
+                return (T[]) senseCacheResults[i].clone();
+        }
+        return null;
+    }
+
+    // remembers a result for getCachedSense and returns it; the player gets the
+    // original and the cache keeps a copy, since players can change the array
+    private <T> T[] cacheSense(Class<T> type, boolean wholeMap, MapLocation center, int radiusSquared, Team team, T[] result) {
+        int i = senseCacheNext;
+        senseCacheNext = (i + 1) % SENSE_CACHE_SIZE;
+        senseCacheTypes[i] = type;
+        senseCacheWholeMap[i] = wholeMap;
+        senseCacheCenters[i] = center;
+        senseCacheRadii[i] = radiusSquared;
+        senseCacheTeams[i] = team;
+        senseCacheResults[i] = result.clone();
+        return result;
     }
    
     
@@ -403,12 +459,44 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
                 		location.distanceSquaredTo(o.getLocation()) <= radiusSquared;
             }
         };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.getAllObjectsWithinRadiusDonutSq(location, radiusSquared, -1), p), type);
     }
     
     public RobotInfo senseRobotInfo(Robot r) throws GameActionException {
         InternalRobot ir = castInternalRobot(r);
         assertCanSense(ir);
+        return robotInfo(ir);
+    }
+
+    public RobotInfo[] senseRobotInfos(Robot[] robots) throws GameActionException {
+        assertNotNull(robots);
+        // the charge can end the turn, so it comes before anything is checked
+        if (robots.length > 0)
+            RobotMonitor.incrementBytecodes(robots.length * GameConstants.ROBOT_INFO_BYTECODE_COST);
+        int sensorRadius = sensorRadiusSquared();
+        RobotInfo[] infos = new RobotInfo[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            InternalRobot ir = castInternalRobot(robots[i]);
+            if (!ir.exists() || !checkCanSense(ir.getLocation(), sensorRadius))
+                throw new GameActionException(CANT_SENSE_THAT, "That object is not within the robot's sensor range.");
+            infos[i] = robotInfo(ir);
+        }
+        return infos;
+    }
+
+    public RobotInfo[] senseNearbyRobotInfos(int radiusSquared, Team team) {
+        // everything senseNearbyGameObjects returns can be sensed
+        Robot[] robots = senseNearbyGameObjects(Robot.class, radiusSquared, team);
+        // we don't know the count until we've sensed, so charge in a way that
+        // can't end the turn before the infos are built
+        RobotMonitor.chargeBytecodes(robots.length * GameConstants.ROBOT_INFO_BYTECODE_COST);
+        RobotInfo[] infos = new RobotInfo[robots.length];
+        for (int i = 0; i < robots.length; i++)
+            infos[i] = robotInfo((InternalRobot) robots[i]);
+        return infos;
+    }
+
+    private static RobotInfo robotInfo(InternalRobot ir) {
         return new RobotInfo(ir, ir.sensedLocation(), ir.getEnergonLevel(), ir.getShieldLevel(),
                 ir.getDirection(), ir.type, ir.getTeam(), ir.getRegen(),
                 ir.roundsUntilAttackIdle(), ir.roundsUntilMovementIdle());
@@ -459,14 +547,13 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     	if (team == getTeam().opponent())
     		throw new GameActionException(CANT_DO_THAT_BRO, "can't sense enemy encampments");
     	ArrayList<MapLocation> camps = new ArrayList<MapLocation>();
-    	Map<MapLocation, Team> campmap = gameWorld.getEncampmentMap();
-    	for (Entry<MapLocation, Team> entry : campmap.entrySet())
+    	for (MapLocation camp : gameWorld.getEncampmentsWithinRadiusSq(center, radiusSquared))
     	{
-    		if ( ( team == null 
-    				|| (team == getTeam() && entry.getValue() == team)
-    				|| (team == Team.NEUTRAL && entry.getValue() != getTeam()) )
-    				&& center.distanceSquaredTo(entry.getKey()) <= radiusSquared)
-    			camps.add(entry.getKey());
+    		Team owner = gameWorld.getEncampment(camp);
+    		if ( team == null 
+    				|| (team == getTeam() && owner == team)
+    				|| (team == Team.NEUTRAL && owner != getTeam()) )
+    			camps.add(camp);
     	}
         return camps.toArray(new MapLocation[]{});
     }
@@ -491,7 +578,6 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
 //    }
     
     public MapLocation[] senseMineLocations(final MapLocation center, final int radiusSquared, final Team team) {
-    	final Set<MapLocation> knownlocs = gameWorld.getKnownMineMap(getTeam());
     	if (team == null)
     	{
     		if (radiusSquared >= GameConstants.MAP_MAX_HEIGHT*GameConstants.MAP_MAX_HEIGHT + GameConstants.MAP_MAX_WIDTH*GameConstants.MAP_MAX_WIDTH)
@@ -499,18 +585,18 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     			Predicate<MapLocation> p = new Predicate<MapLocation>() {
             		public boolean apply(MapLocation o) {
             			return gameWorld.getMine(o) != getTeam().opponent()
-            					|| knownlocs.contains(o);
+            					|| gameWorld.isKnownMineLocation(getTeam(), o);
             		}
             	};
-            	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+            	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(), p), MapLocation.class); 
         	}
     		Predicate<MapLocation> p = new Predicate<MapLocation>() {
         		public boolean apply(MapLocation o) {
-        			return (gameWorld.getMine(o) != getTeam().opponent() || knownlocs.contains(o))
+        			return (gameWorld.getMine(o) != getTeam().opponent() || gameWorld.isKnownMineLocation(getTeam(), o))
         					&& center.distanceSquaredTo(o) <= radiusSquared;
         		}
         	};
-        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(center, radiusSquared), p), MapLocation.class); 
     	}
     	if (radiusSquared >= GameConstants.MAP_MAX_HEIGHT*GameConstants.MAP_MAX_HEIGHT + GameConstants.MAP_MAX_WIDTH*GameConstants.MAP_MAX_WIDTH)
     	{
@@ -521,15 +607,15 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
             			return gameWorld.getMine(o) == team;
             		}
             	};
-            	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+            	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(), p), MapLocation.class); 
     		}
     		Predicate<MapLocation> p = new Predicate<MapLocation>() {
         		public boolean apply(MapLocation o) {
         			return gameWorld.getMine(o) == team
-        					&& knownlocs.contains(o);
+        					&& gameWorld.isKnownMineLocation(getTeam(), o);
         		}
         	};
-        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(), p), MapLocation.class); 
     	}
     	if (team != getTeam().opponent())
 		{
@@ -539,41 +625,40 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     		        		 && gameWorld.getMine(o) == team;
         		}
         	};
-        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(center, radiusSquared), p), MapLocation.class); 
 		}
     	Predicate<MapLocation> p = new Predicate<MapLocation>() {
     		public boolean apply(MapLocation o) {
     			return center.distanceSquaredTo(o) <= radiusSquared
 		        		 && gameWorld.getMine(o) == team
-		        		 && knownlocs.contains(o);
+		        		 && gameWorld.isKnownMineLocation(getTeam(), o);
     		}
     	};
-    	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+    	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(center, radiusSquared), p), MapLocation.class); 
     }
     
     public MapLocation[] senseNonAlliedMineLocations(final MapLocation center, final int radiusSquared) {
-    	final Set<MapLocation> knownlocs = gameWorld.getKnownMineMap(getTeam());
     	if (radiusSquared >= GameConstants.MAP_MAX_HEIGHT*GameConstants.MAP_MAX_HEIGHT + GameConstants.MAP_MAX_WIDTH*GameConstants.MAP_MAX_WIDTH)
     	{
     		Predicate<MapLocation> p = new Predicate<MapLocation>() {
         		public boolean apply(MapLocation o) {
         			return (gameWorld.getMine(o) != getTeam()
-        					&& knownlocs.contains(o))
+        					&& gameWorld.isKnownMineLocation(getTeam(), o))
         					|| gameWorld.getMine(o) == Team.NEUTRAL;
         					
         		}
         	};
-        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+        	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(), p), MapLocation.class); 
     	}
     	Predicate<MapLocation> p = new Predicate<MapLocation>() {
     		public boolean apply(MapLocation o) {
     			return center.distanceSquaredTo(o) <= radiusSquared
 		        		 && ((gameWorld.getMine(o) != getTeam()
-		        		 && knownlocs.contains(o))
+		        		 && gameWorld.isKnownMineLocation(getTeam(), o))
 		        		 || gameWorld.getMine(o) == Team.NEUTRAL);
     		}
     	};
-    	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineMaps().keySet(), p), MapLocation.class); 
+    	return Iterables.toArray((Iterable<MapLocation>) Iterables.filter(gameWorld.getMineLocations(center, radiusSquared), p), MapLocation.class); 
     }
 
     // ***********************************
@@ -599,13 +684,22 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     	assertNotMoving();
         assertCanMove(d);
         int delay = 1;
-        robot.activateMovement(new MovementSignal(robot, getLocation().add(d),
+        robot.activateMovement(new MovementSignal(robot, adjacentLocation(d),
                 true, delay), delay);
     }
 
     public boolean canMove(Direction d) {
         assertValidDirection(d);
-        return gameWorld.canMove(robot.getRobotLevel(), getLocation().add(d));
+        return gameWorld.canMove(robot.getRobotLevel(), adjacentLocation(d));
+    }
+
+    /**
+     * Same as getLocation().add(d), but reuses the map's MapLocation when
+     * the square is on the map.
+     */
+    private MapLocation adjacentLocation(Direction d) {
+        MapLocation loc = getLocation();
+        return gameWorld.getGameMap().getLocation(loc.x + d.dx, loc.y + d.dy);
     }
 
     public void assertCanMove(Direction d) throws GameActionException {
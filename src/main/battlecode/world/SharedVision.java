@@ -0,0 +1,103 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Robot;
+import battlecode.common.Team;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of which locations each team can see, so that checkCanSense
+ * doesn't have to look at every robot.
+ * <p/>
+ * A robot can sense a location if it is within the robot's sensor radius of
+ * any robot on its team.  For each team and sensor radius that has been asked
+ * about, we keep a grid that counts how many of the team's robots are within
+ * that radius of each location.  The grids are built the first time they are
+ * needed and then updated whenever a robot is added, moves or is removed.
+ */
+class SharedVision {
+
+    private final GameWorld world;
+    private final int originX, originY;
+    private final int width, height;
+
+    // coverage grids for each team, keyed by radius squared
+    private final Map<Integer, int[][]>[] coverage;
+
+    SharedVision(GameWorld world, GameMap map) {
+        this.world = world;
+        MapLocation origin = map.getMapOrigin();
+        originX = origin.x;
+        originY = origin.y;
+        width = map.getWidth();
+        height = map.getHeight();
+        @SuppressWarnings("unchecked")
+        Map<Integer, int[][]>[] coverage = (Map<Integer, int[][]>[]) new Map<?, ?>[Team.values().length];
+        for (int i = 0; i < coverage.length; i++)
+            coverage[i] = new HashMap<Integer, int[][]>();
+        this.coverage = coverage;
+    }
+
+    private void cover(int[][] grid, int radiusSquared, MapLocation loc, int delta) {
+        int x = loc.x - originX, y = loc.y - originY;
+        int[] offsets = RadiusOffsets.get(radiusSquared);
+        for (int i = 0; i < offsets.length; i += 2) {
+            int cx = x + offsets[i], cy = y + offsets[i + 1];
+            if (cx >= 0 && cy >= 0 && cx < width && cy < height)
+                grid[cx][cy] += delta;
+        }
+    }
+
+    private void update(InternalObject o, MapLocation loc, int delta) {
+        if (loc == null || !(o instanceof Robot))
+            return;
+        for (Map.Entry<Integer, int[][]> e : coverage[o.getTeam().ordinal()].entrySet())
+            cover(e.getValue(), e.getKey(), loc, delta);
+    }
+
+    void add(InternalObject o, MapLocation loc) {
+        update(o, loc, 1);
+    }
+
+    void move(InternalObject o, MapLocation oldLoc, MapLocation newLoc) {
+        update(o, oldLoc, -1);
+        update(o, newLoc, 1);
+    }
+
+    void remove(InternalObject o, MapLocation loc) {
+        update(o, loc, -1);
+    }
+
+    /**
+     * Forgets the grids for a team.  Should be called when the team's sensor
+     * radius changes, since the old grids won't be used again.
+     */
+    void clear(Team t) {
+        coverage[t.ordinal()].clear();
+    }
+
+    /**
+     * Returns true if the location is within radiusSquared of some robot on team t.
+     */
+    boolean canSense(Team t, MapLocation loc, int radiusSquared) {
+        int x = loc.x - originX, y = loc.y - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            // we don't keep track of locations off the map
+            for (InternalObject o : world.getAllObjectsWithinRadiusDonutSq(loc, radiusSquared, -1))
+                if (o instanceof Robot && o.getTeam() == t)
+                    return true;
+            return false;
+        }
+        int[][] grid = coverage[t.ordinal()].get(radiusSquared);
+        if (grid == null) {
+            grid = new int[width][height];
+            for (InternalObject o : world.allObjects())
+                if (o instanceof Robot && o.getTeam() == t && o.getLocation() != null)
+                    cover(grid, radiusSquared, o.getLocation(), 1);
+            coverage[t.ordinal()].put(radiusSquared, grid);
+        }
+        return grid[x][y] > 0;
+    }
+}
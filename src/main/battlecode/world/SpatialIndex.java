@@ -0,0 +1,112 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of which objects are near each other, so that radius queries
+ * only have to look at the objects in nearby parts of the map.
+ * <p/>
+ * The map is divided into square cells, and each cell has a list of the objects
+ * in it.  Queries return objects in the order in which they were added, which is
+ * the same order that GameWorld.allObjects uses.
+ */
+class SpatialIndex {
+
+    // the width and height of a cell; most sensor radii fit in a few cells
+    static final int CELL_SIZE = 4;
+
+    private final int originX, originY;
+    private final int width, height;
+    private final int cellsHigh;
+    private final List<InternalObject>[] cells;
+
+    private int nextOrder;
+
+    SpatialIndex(GameMap map) {
+        MapLocation origin = map.getMapOrigin();
+        originX = origin.x;
+        originY = origin.y;
+        width = map.getWidth();
+        height = map.getHeight();
+        int cellsWide = (width + CELL_SIZE - 1) / CELL_SIZE;
+        cellsHigh = (height + CELL_SIZE - 1) / CELL_SIZE;
+        @SuppressWarnings("unchecked")
+        List<InternalObject>[] cells = (List<InternalObject>[]) new List<?>[cellsWide * cellsHigh];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = new ArrayList<InternalObject>();
+        this.cells = cells;
+    }
+
+    private List<InternalObject> cell(MapLocation loc) {
+        int x = loc.x - originX, y = loc.y - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return null;
+        return cells[(x / CELL_SIZE) * cellsHigh + y / CELL_SIZE];
+    }
+
+    /**
+     * Adds a new object to the index.  Objects with no location are remembered
+     * so that they keep their place in the order once they get a location.
+     */
+    void add(InternalObject o, MapLocation loc) {
+        if (o.addedOrder < 0)
+            o.addedOrder = nextOrder++;
+        if (loc != null) {
+            List<InternalObject> cell = cell(loc);
+            if (cell != null)
+                cell.add(o);
+        }
+    }
+
+    void move(InternalObject o, MapLocation oldLoc, MapLocation newLoc) {
+        if (oldLoc != null) {
+            List<InternalObject> cell = cell(oldLoc);
+            if (cell != null)
+                cell.remove(o);
+        }
+        add(o, newLoc);
+    }
+
+    void remove(InternalObject o, MapLocation loc) {
+        if (loc != null) {
+            List<InternalObject> cell = cell(loc);
+            if (cell != null)
+                cell.remove(o);
+        }
+    }
+
+    /**
+     * Returns the objects whose squared distance from center is at most
+     * outerRadiusSquared and more than innerRadiusSquared.
+     */
+    List<InternalObject> getObjectsWithinRadiusDonutSq(MapLocation center, int outerRadiusSquared, int innerRadiusSquared) {
+        List<InternalObject> found = new ArrayList<InternalObject>();
+        if (outerRadiusSquared < 0)
+            return found;
+        int radius = (int) Math.ceil(Math.sqrt(outerRadiusSquared));
+        int minX = Math.max(center.x - radius - originX, 0);
+        int maxX = Math.min(center.x + radius - originX, width - 1);
+        int minY = Math.max(center.y - radius - originY, 0);
+        int maxY = Math.min(center.y + radius - originY, height - 1);
+        if (minX > maxX || minY > maxY)
+            return found;
+        for (int cx = minX / CELL_SIZE; cx <= maxX / CELL_SIZE; cx++) {
+            for (int cy = minY / CELL_SIZE; cy <= maxY / CELL_SIZE; cy++) {
+                for (InternalObject o : cells[cx * cellsHigh + cy]) {
+                    int d = o.getLocation().distanceSquaredTo(center);
+                    if (d <= outerRadiusSquared && d > innerRadiusSquared)
+                        found.add(o);
+                }
+            }
+        }
+        // a big radius can find most of the objects on the map, so sort once at
+        // the end; each cell's objects are mostly in order already, which the
+        // merge sort takes advantage of
+        Collections.sort(found, GameWorld.addedOrderComparator);
+        return found;
+    }
+}
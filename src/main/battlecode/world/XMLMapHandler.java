@@ -534,12 +534,12 @@ class XMLMapHandler extends DefaultHandler {
     class FloodFill {
 
         Stack<MapLocation> queue;
-        Set<MapLocation> marked;
+        LocationSet marked;
         int n_marked;
 
         public FloodFill(int x, int y) {
             queue = new Stack<MapLocation>();
-            marked = new HashSet<MapLocation>();
+            marked = new LocationSet(mapWidth * mapHeight);
             add(x, y);
         }
 
@@ -560,11 +560,9 @@ class XMLMapHandler extends DefaultHandler {
                 return;
             if (map[x][y].tile() != TerrainTile.LAND)
                 return;
-            MapLocation loc = new MapLocation(x, y);
-            if (marked.contains(loc))
+            if (!marked.add(x, y))
                 return;
-            queue.push(loc);
-            marked.add(loc);
+            queue.push(new MapLocation(x, y));
             n_marked++;
         }
     }
@@ -692,7 +690,7 @@ class XMLMapHandler extends DefaultHandler {
 
         connected:
         {
-            HashMap<MapLocation, UnionFindNode> nodeMap = new HashMap<MapLocation, UnionFindNode>();
+            LocationMap<UnionFindNode> nodeMap = new LocationMap<UnionFindNode>();
             UnionFindNode n0, n1;
             int components = nodes;
             for (MapLocation[] link : nodeLinks) {
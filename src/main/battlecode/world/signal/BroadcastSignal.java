@@ -1,7 +1,5 @@
 package battlecode.world.signal;
 
-import java.util.HashMap;
-
 import battlecode.engine.signal.Signal;
 import battlecode.world.InternalRobot;
 
@@ -18,16 +16,26 @@ public class BroadcastSignal extends Signal {
      * TheID of the robot that broadcasted the message.
      */
     public final int robotID;
-    public transient HashMap<Integer, Integer> broadcastMap;
+
+    /**
+     * The channels and data that were broadcast, in the order they were broadcast.
+     * Only the first broadcastCount entries are used.  The robot reuses these arrays,
+     * so they are only valid until the signal has been visited.
+     */
+    public transient int[] broadcastChannels;
+    public transient int[] broadcastData;
+    public transient int broadcastCount;
 
     /**
      * Creates a signal for a robot broadcast.
      *
      * @param robot the robot that broadcast the message
      */
-    public BroadcastSignal(InternalRobot robot, HashMap<Integer, Integer> broadcastMap) {
+    public BroadcastSignal(InternalRobot robot, int[] broadcastChannels, int[] broadcastData, int broadcastCount) {
         this.robotID = robot.getID();
-        this.broadcastMap = broadcastMap;
+        this.broadcastChannels = broadcastChannels;
+        this.broadcastData = broadcastData;
+        this.broadcastCount = broadcastCount;
     }
 
     /**
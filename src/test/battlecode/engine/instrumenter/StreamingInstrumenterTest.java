@@ -0,0 +1,161 @@
+package battlecode.engine.instrumenter;
+
+import battlecode.world.GameWorld;
+import org.junit.After;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import testplayer.RobotPlayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.asm.ClassWriter.COMPUTE_MAXS;
+
+/**
+ * Instruments classes with RoboMethodAdapter and with RoboMethodTree and
+ * checks that the results are byte for byte the same.  The classes are a
+ * sample player in src/test, the engine's own classes, and the java.util
+ * and java.math classes that players get instrumented copies of.
+ * <p/>
+ * The instrumenter reads AllowedPackages.txt, DisallowedClasses.txt and
+ * MethodCosts.txt from the working directory, so this needs to run in the
+ * directory that <code>ant compile-tests</code> copies them to.
+ */
+public class StreamingInstrumenterTest {
+
+    private static final String TEAM = "testplayer";
+
+    // the classes that both instrumenters could instrument
+    private final Set<String> instrumented = new HashSet<String>();
+    private final List<String> mismatches = new ArrayList<String>();
+
+    @After
+    public void tearDown() throws Exception {
+        setStreaming(false);
+    }
+
+    private static void setStreaming(boolean streaming) throws Exception {
+        Field field = InstrumentingClassLoader.class.getDeclaredField("streamingInstrumenter");
+        field.setAccessible(true);
+        field.setBoolean(null, streaming);
+    }
+
+    // returns the instrumented class, or the name of the exception if it
+    // can't be instrumented
+    private static Object instrument(byte[] classBytes, boolean checkDisallowed, boolean debugMethodsEnabled, boolean streaming) throws Exception {
+        setStreaming(streaming);
+        try {
+            ClassWriter cw = new ClassWriter(COMPUTE_MAXS);
+            new ClassReader(classBytes).accept(new RoboAdapter(cw, TEAM, debugMethodsEnabled, false, checkDisallowed), 0);
+            return cw.toByteArray();
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private void compare(Class<?> anchor, String prefix, boolean checkDisallowed) throws Exception {
+        for (String name : classNames(anchor, prefix)) {
+            byte[] classBytes = read(ClassLoader.getSystemResourceAsStream(name));
+            for (boolean debugMethodsEnabled : new boolean[]{false, true}) {
+                Object tree = instrument(classBytes, checkDisallowed, debugMethodsEnabled, false);
+                Object streaming = instrument(classBytes, checkDisallowed, debugMethodsEnabled, true);
+                boolean same;
+                if (tree instanceof byte[] && streaming instanceof byte[]) {
+                    same = Arrays.equals((byte[]) tree, (byte[]) streaming);
+                    instrumented.add(name);
+                } else
+                    same = tree.equals(streaming);
+                if (!same)
+                    mismatches.add(name + (debugMethodsEnabled ? " with debug methods" : ""));
+            }
+        }
+    }
+
+    @Test
+    public void samplePlayer() throws Exception {
+        compare(RobotPlayer.class, TEAM + "/", true);
+        assertTrue("mismatches: " + mismatches, mismatches.isEmpty());
+        assertTrue(instrumented.contains(TEAM + "/RobotPlayer.class"));
+    }
+
+    @Test
+    public void engineClasses() throws Exception {
+        compare(GameWorld.class, "battlecode/", false);
+        assertTrue("mismatches: " + mismatches, mismatches.isEmpty());
+        assertTrue(instrumented.size() > 100);
+    }
+
+    @Test
+    public void libraryClasses() throws Exception {
+        compare(Object.class, "java/util/", false);
+        compare(Object.class, "java/math/", false);
+        assertTrue("mismatches: " + mismatches, mismatches.isEmpty());
+        assertTrue(instrumented.size() > 100);
+    }
+
+    /**
+     * Lists the class files under prefix in the directory or jar that anchor was loaded from.
+     */
+    private static List<String> classNames(Class<?> anchor, String prefix) throws IOException {
+        String anchorName = anchor.getName().replace('.', '/') + ".class";
+        URL url = ClassLoader.getSystemResource(anchorName);
+        List<String> names = new ArrayList<String>();
+        if (url.getProtocol().equals("jar")) {
+            JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+                String name = e.nextElement().getName();
+                if (name.startsWith(prefix) && name.endsWith(".class"))
+                    names.add(name);
+            }
+        } else {
+            String path;
+            try {
+                path = new File(url.toURI()).getPath();
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+            File root = new File(path.substring(0, path.length() - anchorName.length()));
+            listClasses(new File(root, prefix), prefix, names);
+        }
+        assertTrue("no classes in " + prefix, !names.isEmpty());
+        return names;
+    }
+
+    private static void listClasses(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory())
+                listClasses(f, prefix + f.getName() + "/", names);
+            else if (f.getName().endsWith(".class"))
+                names.add(prefix + f.getName());
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the engine doesn't allocate anything during the turn of a
+ * robot that does nothing, since that happens for every robot every round.
+ */
+public class IdleTurnAllocationTest {
+
+    private static final int SIZE = 60;
+
+    @Before
+    public void setUp() {
+        TestWorlds.setCurrentRobot(-1);
+    }
+
+    @Test
+    public void idleTurnAllocatesNothing() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        GameWorld world = TestWorlds.emptyWorld(SIZE, SIZE);
+        // so that no robot runs out of power and dies
+        world.adjustResources(Team.A, 1e12);
+        List<InternalRobot> robots = new ArrayList<InternalRobot>();
+        for (int x = 0; x < SIZE; x += 2)
+            for (int y = 0; y < SIZE; y += 2)
+                robots.add(new InternalRobot(world, RobotType.SOLDIER, new MapLocation(x, y), Team.A, false));
+
+        // the first turns load classes and fill in lazily built tables
+        for (int round = 0; round < 20; round++)
+            runTurns(robots);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        runTurns(robots);
+        long after = threads.getThreadAllocatedBytes(thread);
+        assertEquals("bytes allocated in " + robots.size() + " idle turns", 0, after - before);
+    }
+
+    private static void runTurns(List<InternalRobot> robots) {
+        for (int i = 0; i < robots.size(); i++) {
+            InternalRobot r = robots.get(i);
+            r.processBeginningOfTurn();
+            r.processEndOfTurn();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package battlecode.world;
+
+import battlecode.common.Direction;
+import battlecode.common.GameActionException;
+import battlecode.common.GameObject;
+import battlecode.common.GameConstants;
+import battlecode.common.MapLocation;
+import battlecode.common.Robot;
+import battlecode.common.RobotController;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.common.TerrainTile;
+import battlecode.common.Upgrade;
+import battlecode.world.signal.NodeBirthSignal;
+import org.apache.commons.cli.*;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Proposes new method costs for MethodCosts.txt by timing each method and comparing it
+ * to how long it takes to execute an ordinary bytecode.
+ * <p/>
+ * The calibrator builds a small game world with robots, mines and encampments on it, so
+ * that every RobotController method can be called on a real RobotControllerImpl.  The other
+ * methods in MethodCosts.txt are timed too if we know how to make their arguments; the rest
+ * keep their old cost.  Run it on a quiet machine, because the numbers are only as good as
+ * the timings.
+ * <p/>
+ * The baseline loop gets fully optimized by the JIT, so it is on the fast side.  To keep
+ * the costs from one run to the next comparable, pass -nsPerBytecode to use a fixed rate.
+ * <p/>
+ * Usage: MethodCostCalibrator [-costs MethodCosts.txt] [-out MethodCosts.proposed.txt] [-report file]
+ * [-iterations n] [-nsPerBytecode x]
+ * <p/>
+ * This is a developer tool, so it lives with the tests and isn't part of the server jar.
+ * Build it with <code>ant compile-tests</code>.
+ */
+public class MethodCostCalibrator {
+
+    private static final String RC_PREFIX = "battlecode/common/RobotController/";
+
+    // these end the robot's turn or the game, so we can't call them
+    private static final Set<String> skippedMethods = new HashSet<String>(Arrays.asList(
+            "yield", "suicide", "resign", "breakpoint"));
+
+    private static final int MAP_SIZE = 40;
+
+    // each method is timed this many times, and the fastest run counts
+    private static final int RUNS = 5;
+
+    /**
+     * One line of MethodCosts.txt.
+     */
+    private static class Entry {
+        final String name;
+        final int oldCost;
+        final boolean shouldEndRound;
+        // -1 if we couldn't time the method
+        double nanos = -1;
+        boolean threw;
+
+        Entry(String name, int oldCost, boolean shouldEndRound) {
+            this.name = name;
+            this.oldCost = oldCost;
+            this.shouldEndRound = shouldEndRound;
+        }
+    }
+
+    private final int iterations;
+    private double nanosPerBytecode;
+
+    private GameWorld world;
+    private RobotControllerImpl rc;
+    private InternalRobot enemy;
+
+    // keeps the JIT from throwing away the baseline loop
+    private static int sink;
+    private static int[] data = new int[1024];
+
+    public MethodCostCalibrator(int iterations, double nanosPerBytecode) {
+        this.iterations = iterations;
+        this.nanosPerBytecode = nanosPerBytecode;
+    }
+
+    private static Options options() {
+        Options options = new Options();
+        options.addOption("costs", true, "the current method costs file");
+        options.addOption("out", true, "where to write the proposed method costs");
+        options.addOption("report", true, "where to write the report (default: standard output)");
+        options.addOption("iterations", true, "how many times to call each method");
+        options.addOption("nsPerBytecode", true, "use this instead of timing the baseline loop");
+        return options;
+    }
+
+    // ******************************
+    // THE GAME WORLD
+    // ******************************
+
+    private void createWorld() {
+        TerrainTile[][] tiles = new TerrainTile[MAP_SIZE][MAP_SIZE];
+        for (TerrainTile[] column : tiles)
+            Arrays.fill(column, TerrainTile.LAND);
+        Map<GameMap.MapProperties, Integer> properties = new EnumMap<GameMap.MapProperties, Integer>(GameMap.MapProperties.class);
+        properties.put(GameMap.MapProperties.WIDTH, MAP_SIZE);
+        properties.put(GameMap.MapProperties.HEIGHT, MAP_SIZE);
+        world = new GameWorld(new GameMap(properties, tiles), "A", "B", new long[2][GameConstants.TEAM_MEMORY_LENGTH]);
+
+        world.setHQ(new InternalRobot(world, RobotType.HQ, new MapLocation(2, 2), Team.A, false), Team.A);
+        world.setHQ(new InternalRobot(world, RobotType.HQ, new MapLocation(MAP_SIZE - 3, MAP_SIZE - 3), Team.B, false), Team.B);
+
+        // a crowd of robots, mines and encampments around the robot we'll be calling
+        // methods on, so that the sensing methods have something to find
+        Random random = new Random(0);
+        MapLocation center = new MapLocation(MAP_SIZE / 2, MAP_SIZE / 2);
+        InternalRobot self = new InternalRobot(world, RobotType.SOLDIER, center, Team.A, false);
+        // right next to us, so that senseRobotInfo and friends succeed
+        enemy = new InternalRobot(world, RobotType.SOLDIER, center.add(Direction.NORTH), Team.B, false);
+        for (int i = 0; i < 60; i++) {
+            MapLocation loc = new MapLocation(random.nextInt(MAP_SIZE), random.nextInt(MAP_SIZE));
+            if (world.getObject(loc, RobotType.SOLDIER.level) != null)
+                continue;
+            new InternalRobot(world, RobotType.SOLDIER, loc, random.nextBoolean() ? Team.A : Team.B, false);
+        }
+        for (int i = 0; i < 80; i++) {
+            Team t = Team.values()[random.nextInt(3)];
+            world.addMine(t, new MapLocation(random.nextInt(MAP_SIZE), random.nextInt(MAP_SIZE)));
+        }
+        for (int i = 0; i < 20; i++)
+            world.visitSignal(new NodeBirthSignal(new MapLocation(random.nextInt(MAP_SIZE), random.nextInt(MAP_SIZE))));
+        rc = new RobotControllerImpl(world, self);
+    }
+
+    /**
+     * Returns a value to pass for a parameter of the given type, or null if we don't
+     * know how to make one.
+     */
+    private Object argument(Class<?> type) {
+        if (type == int.class)
+            return 1;
+        if (type == long.class)
+            return 1L;
+        if (type == double.class)
+            return 1.0;
+        if (type == float.class)
+            return 1.0f;
+        if (type == boolean.class)
+            return false;
+        if (type == char.class)
+            return 'a';
+        if (type == String.class || type == Object.class || type == CharSequence.class)
+            return "battlecode";
+        if (type == MapLocation.class)
+            return rc.getLocation().add(Direction.NORTH_EAST);
+        if (type == Direction.class)
+            return Direction.EAST;
+        if (type == Team.class)
+            return Team.B;
+        if (type == RobotType.class)
+            return RobotType.SOLDIER;
+        if (type == Upgrade.class)
+            return Upgrade.PICKAXE;
+        if (type == Class.class)
+            return Robot.class;
+        if (type == Robot.class || type == GameObject.class)
+            return enemy;
+        if (type == int[].class)
+            return new int[]{3, 1, 2};
+        return null;
+    }
+
+    private Object receiver(Class<?> owner) {
+        if (owner.isInstance(rc))
+            return rc;
+        if (owner == MapLocation.class)
+            return rc.getLocation();
+        if (owner == String.class)
+            return "battlecode";
+        try {
+            return owner.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ******************************
+    // TIMING
+    // ******************************
+
+    /**
+     * Returns the time it takes to run one bytecode of typical player code: some
+     * arithmetic, array accesses, and a static call at the end of each basic block
+     * like the one the instrumenter adds.
+     */
+    private double nanosPerBytecode() {
+        // 20 bytecodes per iteration, counting the loop itself
+        final int bytecodesPerIteration = 20;
+        int n = iterations * 100;
+        baseline(n);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            baseline(n);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / ((long) n * bytecodesPerIteration);
+    }
+
+    private static void baseline(int n) {
+        int sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += data[i & 1023];
+            data[(i * 7) & 1023] = sum;
+            block(sum);
+        }
+        sink = sum;
+    }
+
+    private static void block(int x) {
+        sink ^= x;
+    }
+
+    public static void noop() {
+    }
+
+    /**
+     * Returns the average time of one reflective call to m, or -1 if the call
+     * fails for a reason other than a GameActionException.
+     */
+    private double time(Method m, Object receiver, Object[] args, Entry entry) {
+        try {
+            // warm up the JIT
+            for (int i = 0; i < iterations; i++) {
+                invoke(m, receiver, args, entry);
+            }
+            double best = Double.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                // so that broadcasting and reading broadcasts don't fail
+                world.adjustResources(Team.A, 1e9);
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    invoke(m, receiver, args, entry);
+                }
+                best = Math.min(best, (double) (System.nanoTime() - start) / iterations);
+            }
+            return best;
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            // setIndicatorString and friends add signals
+            world.clearAllSignals();
+        }
+    }
+
+    private static void invoke(Method m, Object receiver, Object[] args, Entry entry) throws IllegalAccessException, InvocationTargetException {
+        try {
+            m.invoke(receiver, args);
+        } catch (InvocationTargetException e) {
+            if (!(e.getCause() instanceof GameActionException))
+                throw e;
+            if (entry != null)
+                entry.threw = true;
+        }
+    }
+
+    /**
+     * Times every overload of the method named by entry, and keeps the slowest.
+     */
+    private void measure(Entry entry, double overhead) {
+        int slash = entry.name.lastIndexOf('/');
+        String methodName = entry.name.substring(slash + 1);
+        if (skippedMethods.contains(methodName) && entry.name.startsWith(RC_PREFIX))
+            return;
+        Class<?> owner;
+        try {
+            owner = Class.forName(entry.name.substring(0, slash).replace('/', '.'));
+        } catch (ClassNotFoundException e) {
+            return;
+        }
+        for (Method m : owner.getMethods()) {
+            if (!m.getName().equals(methodName))
+                continue;
+            Object receiver = null;
+            if (!Modifier.isStatic(m.getModifiers())) {
+                receiver = receiver(owner);
+                if (receiver == null)
+                    continue;
+            }
+            Class<?>[] types = m.getParameterTypes();
+            Object[] args = new Object[types.length];
+            boolean ok = true;
+            for (int i = 0; i < types.length; i++) {
+                args[i] = argument(types[i]);
+                ok &= args[i] != null;
+            }
+            if (!ok)
+                continue;
+            double nanos = time(m, receiver, args, entry);
+            if (nanos >= 0)
+                entry.nanos = Math.max(entry.nanos, Math.max(0, nanos - overhead));
+        }
+    }
+
+    /**
+     * The instrumenter charges 1 bytecode for the call itself, plus the cost in MethodCosts.txt.
+     */
+    private static int proposedCost(Entry entry, double nanosPerBytecode) {
+        if (entry.nanos < 0)
+            return entry.oldCost;
+        return Math.max(0, (int) Math.round(entry.nanos / nanosPerBytecode) - 1);
+    }
+
+    // ******************************
+    // INPUT AND OUTPUT
+    // ******************************
+
+    private static List<Entry> readCosts(String fileName) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line);
+                if (st.countTokens() != 3)
+                    continue;
+                entries.add(new Entry(st.nextToken(), Integer.parseInt(st.nextToken()), Boolean.parseBoolean(st.nextToken())));
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    public List<Entry> calibrate(List<Entry> entries, PrintWriter report) throws NoSuchMethodException {
+        createWorld();
+
+        // every RobotController method should have a cost, even if it isn't listed yet
+        Set<String> listed = new HashSet<String>();
+        for (Entry e : entries)
+            listed.add(e.name);
+        for (Method m : RobotController.class.getMethods()) {
+            String name = RC_PREFIX + m.getName();
+            if (listed.add(name))
+                entries.add(new Entry(name, 0, true));
+        }
+
+        if (nanosPerBytecode <= 0)
+            nanosPerBytecode = nanosPerBytecode();
+        double overhead = time(MethodCostCalibrator.class.getMethod("noop"), null, new Object[0], null);
+        report.printf("baseline: %.3f ns per bytecode, %.1f ns per reflective call (subtracted)%n%n", nanosPerBytecode, overhead);
+
+        for (Entry e : entries)
+            measure(e, overhead);
+
+        report.printf("%-70s %8s %10s %8s %s%n", "method", "old", "ns/call", "new", "");
+        for (Entry e : entries) {
+            int cost = proposedCost(e, nanosPerBytecode);
+            String note;
+            if (e.nanos < 0)
+                note = "not measured";
+            else if (cost > 2 * e.oldCost + 10)
+                note = "UNDERPRICED";
+            else if (e.oldCost > 2 * cost + 10)
+                note = "overpriced";
+            else
+                note = "";
+            if (e.threw)
+                note += (note.length() > 0 ? ", " : "") + "threw GameActionException";
+            report.printf("%-70s %8d %10s %8d %s%n", e.name, e.oldCost,
+                    e.nanos < 0 ? "-" : String.format("%.1f", e.nanos), cost, note);
+        }
+        report.flush();
+        return entries;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLine cmd = new GnuParser().parse(options(), args);
+        String costsFile = cmd.getOptionValue("costs", "MethodCosts.txt");
+        String outFile = cmd.getOptionValue("out", "MethodCosts.proposed.txt");
+        int iterations = Integer.parseInt(cmd.getOptionValue("iterations", "20000"));
+
+        List<Entry> entries;
+        if (new File(costsFile).exists())
+            entries = readCosts(costsFile);
+        else {
+            System.out.println("Can't find " + costsFile + "; only the RobotController methods will be calibrated.");
+            entries = new ArrayList<Entry>();
+        }
+
+        PrintWriter report;
+        if (cmd.hasOption("report"))
+            report = new PrintWriter(new FileWriter(cmd.getOptionValue("report")));
+        else
+            report = new PrintWriter(System.out);
+
+        double nanosPerBytecode = Double.parseDouble(cmd.getOptionValue("nsPerBytecode", "0"));
+        MethodCostCalibrator calibrator = new MethodCostCalibrator(iterations, nanosPerBytecode);
+        entries = calibrator.calibrate(entries, report);
+
+        PrintWriter out = new PrintWriter(new FileWriter(outFile));
+        for (Entry e : entries)
+            out.println(e.name + " " + proposedCost(e, calibrator.nanosPerBytecode) + " " + e.shouldEndRound);
+        out.close();
+        if (cmd.hasOption("report"))
+            report.close();
+        System.out.println("Wrote proposed costs to " + outFile);
+    }
+}
@@ -0,0 +1,103 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotLevel;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.engine.instrumenter.RobotDeathException;
+import battlecode.engine.signal.Signal;
+import battlecode.world.signal.DeathSignal;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Kills robots over many rounds, including robots that are reported dead
+ * more than once and the robot that is running, and checks what removeDead
+ * leaves behind.
+ */
+public class RemoveDeadTest {
+
+    private static final int SIZE = 20;
+    private static final Team[] TEAMS = {Team.A, Team.B};
+
+    private final Random random = new Random(48);
+
+    @Before
+    public void setUp() {
+        TestWorlds.setCurrentRobot(-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<InternalRobot> deadRobots(GameWorld world) throws Exception {
+        Field field = GameWorld.class.getDeclaredField("deadRobots");
+        field.setAccessible(true);
+        return (List<InternalRobot>) field.get(world);
+    }
+
+    @Test
+    public void eachRobotDiesOnce() throws Exception {
+        GameWorld world = TestWorlds.emptyWorld(SIZE, SIZE);
+        List<InternalRobot> robots = new ArrayList<InternalRobot>();
+        Map<Integer, Integer> deaths = new HashMap<Integer, Integer>();
+        int killed = 0, currentKilled = 0;
+        for (int round = 0; round < 500; round++) {
+            for (int i = random.nextInt(4); i > 0; i--) {
+                MapLocation loc = new MapLocation(random.nextInt(SIZE), random.nextInt(SIZE));
+                if (world.getObject(loc, RobotLevel.ON_GROUND) == null)
+                    robots.add(new InternalRobot(world, RobotType.SOLDIER, loc, TEAMS[random.nextInt(2)], true));
+            }
+
+            // robots that keep taking damage after they die are reported again
+            List<InternalRobot> dying = new ArrayList<InternalRobot>();
+            for (int i = random.nextInt(4); i > 0 && !robots.isEmpty(); i--) {
+                InternalRobot r = robots.remove(random.nextInt(robots.size()));
+                dying.add(r);
+                for (int hits = 1 + random.nextInt(3); hits > 0; hits--)
+                    r.takeDamage(r.getMaxEnergon());
+            }
+            killed += dying.size();
+
+            boolean current = !dying.isEmpty() && random.nextInt(4) == 0;
+            if (current)
+                TestWorlds.setCurrentRobot(dying.get(random.nextInt(dying.size())).getID());
+            try {
+                world.removeDead();
+                assertFalse("missing RobotDeathException in round " + round, current);
+            } catch (RobotDeathException e) {
+                assertTrue("unexpected RobotDeathException in round " + round, current);
+                currentKilled++;
+            }
+            TestWorlds.setCurrentRobot(-1);
+            assertTrue("deadRobots after round " + round, deadRobots(world).isEmpty());
+
+            for (InternalRobot r : dying)
+                assertFalse(world.exists(r));
+            for (Signal s : world.getAllSignals(false)) {
+                if (s instanceof DeathSignal) {
+                    int id = ((DeathSignal) s).getObjectID();
+                    Integer count = deaths.get(id);
+                    deaths.put(id, count == null ? 1 : count + 1);
+                }
+            }
+            world.clearAllSignals();
+        }
+
+        if (currentKilled == 0)
+            fail("the running robot never died");
+        assertEquals(killed, deaths.size());
+        for (Map.Entry<Integer, Integer> e : deaths.entrySet())
+            assertEquals("DeathSignals for robot " + e.getKey(), 1, (int) e.getValue());
+    }
+}
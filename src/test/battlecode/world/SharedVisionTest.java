@@ -0,0 +1,95 @@
+package battlecode.world;
+
+import battlecode.common.Direction;
+import battlecode.common.GameConstants;
+import battlecode.common.MapLocation;
+import battlecode.common.Robot;
+import battlecode.common.RobotLevel;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.common.Upgrade;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares SharedVision with the scan over every robot that checkCanSense
+ * used to do, while robots are spawned, move and die and teams research VISION.
+ */
+public class SharedVisionTest {
+
+    private static final int SIZE = 30;
+    private static final Team[] TEAMS = {Team.A, Team.B};
+
+    private final Random random = new Random(34);
+
+    @Before
+    public void setUp() {
+        TestWorlds.setCurrentRobot(-1);
+    }
+
+    // what checkCanSense did before SharedVision
+    private static boolean scan(GameWorld world, Team t, MapLocation loc, int radiusSquared) {
+        for (InternalObject o : world.allObjects())
+            if (o instanceof Robot && o.getTeam() == t && loc.distanceSquaredTo(o.getLocation()) <= radiusSquared)
+                return true;
+        return false;
+    }
+
+    private MapLocation randomLocation(int margin) {
+        return new MapLocation(random.nextInt(SIZE + 2 * margin) - margin, random.nextInt(SIZE + 2 * margin) - margin);
+    }
+
+    @Test
+    public void canTeamSenseMatchesScan() {
+        for (int trial = 0; trial < 10; trial++) {
+            GameWorld world = TestWorlds.emptyWorld(SIZE, SIZE);
+            List<InternalRobot> robots = new ArrayList<InternalRobot>();
+            for (int step = 0; step < 2000; step++) {
+                int op = random.nextInt(10);
+                if (op < 2 || robots.isEmpty()) {
+                    MapLocation loc = randomLocation(0);
+                    if (world.getObject(loc, RobotLevel.ON_GROUND) == null)
+                        robots.add(new InternalRobot(world, RobotType.SOLDIER, loc, TEAMS[random.nextInt(2)], true));
+                } else if (op == 2) {
+                    InternalRobot r = robots.remove(random.nextInt(robots.size()));
+                    world.notifyDied(r);
+                    world.removeDead();
+                } else if (op < 6) {
+                    InternalRobot r = robots.get(random.nextInt(robots.size()));
+                    MapLocation loc = r.getLocation().add(Direction.values()[random.nextInt(8)]);
+                    if (world.getGameMap().onTheMap(loc) && world.getObject(loc, RobotLevel.ON_GROUND) == null)
+                        r.setLocation(loc);
+                } else if (op == 6) {
+                    // a few rounds of research, so VISION finishes part way through some trials
+                    Team t = TEAMS[random.nextInt(2)];
+                    if (!world.hasUpgrade(t, Upgrade.VISION))
+                        for (int i = 0; i < 5; i++)
+                            world.researchUpgrade(t, Upgrade.VISION);
+                } else {
+                    Team t = TEAMS[random.nextInt(2)];
+                    MapLocation loc = randomLocation(5);
+                    int radiusSquared = RobotType.SOLDIER.sensorRadiusSquared
+                            + (world.hasUpgrade(t, Upgrade.VISION) ? GameConstants.VISION_UPGRADE_BONUS : 0);
+                    if (random.nextInt(4) == 0)
+                        radiusSquared = random.nextInt(60);
+                    assertEquals("trial " + trial + ", step " + step + ": team " + t + " sensing " + loc + " at " + radiusSquared,
+                            scan(world, t, loc, radiusSquared), world.canTeamSense(t, loc, radiusSquared));
+
+                    // and through the robot controller, which adds the VISION bonus itself
+                    InternalRobot r = robots.get(random.nextInt(robots.size()));
+                    RobotControllerImpl rc = new RobotControllerImpl(world, r);
+                    int sensorRadius = RobotType.SOLDIER.sensorRadiusSquared
+                            + (world.hasUpgrade(r.getTeam(), Upgrade.VISION) ? GameConstants.VISION_UPGRADE_BONUS : 0);
+                    assertEquals("trial " + trial + ", step " + step + ": robot " + r.getID() + " sensing " + loc,
+                            scan(world, r.getTeam(), loc, sensorRadius), rc.checkCanSense(loc));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package battlecode.world;
+
+import battlecode.common.GameConstants;
+import battlecode.common.TerrainTile;
+import battlecode.engine.instrumenter.RobotMonitor;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Helpers for tests that need a game world without running a match.
+ */
+class TestWorlds {
+
+    private TestWorlds() {
+    }
+
+    /**
+     * Returns a world with an all-land map of the given size and no robots.
+     */
+    static GameWorld emptyWorld(int width, int height) {
+        TerrainTile[][] tiles = new TerrainTile[width][height];
+        for (TerrainTile[] column : tiles)
+            Arrays.fill(column, TerrainTile.LAND);
+        Map<GameMap.MapProperties, Integer> properties = new EnumMap<GameMap.MapProperties, Integer>(GameMap.MapProperties.class);
+        properties.put(GameMap.MapProperties.WIDTH, width);
+        properties.put(GameMap.MapProperties.HEIGHT, height);
+        return new GameWorld(new GameMap(properties, tiles), "A", "B", new long[2][GameConstants.TEAM_MEMORY_LENGTH]);
+    }
+
+    /**
+     * Makes the world act as if the robot with the given ID were running.
+     * Robot IDs start at 1, so -1 means no robot.
+     */
+    static void setCurrentRobot(int id) {
+        RobotMonitor.currentRobotData = new RobotMonitor.RobotData(id);
+    }
+}
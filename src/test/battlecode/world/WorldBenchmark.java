@@ -0,0 +1,104 @@
+package battlecode.world;
+
+import battlecode.common.GameConstants;
+import battlecode.common.MapLocation;
+import battlecode.common.Robot;
+import battlecode.common.RobotLevel;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.common.TerrainTile;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures how fast GameWorld answers the questions robots ask it most often.
+ * This is for comparing changes to GameWorld's data structures, so it only
+ * prints how many calls per second each method can handle.
+ * <p/>
+ * Usage: WorldBenchmark [mapSize] [robots] [iterations]
+ * <p/>
+ * This is a developer tool, so it lives with the tests and isn't part of the server jar.
+ * Build it with <code>ant compile-tests</code>.
+ */
+public class WorldBenchmark {
+
+    // keeps the JIT from throwing away the loops
+    private static int sink;
+
+    private final GameWorld world;
+    private final MapLocation[] locations;
+    private final RobotControllerImpl[] controllers;
+
+    WorldBenchmark(int mapSize, int robots) {
+        TerrainTile[][] tiles = new TerrainTile[mapSize][mapSize];
+        for (TerrainTile[] column : tiles)
+            Arrays.fill(column, TerrainTile.LAND);
+        Map<GameMap.MapProperties, Integer> properties = new EnumMap<GameMap.MapProperties, Integer>(GameMap.MapProperties.class);
+        properties.put(GameMap.MapProperties.WIDTH, mapSize);
+        properties.put(GameMap.MapProperties.HEIGHT, mapSize);
+        world = new GameWorld(new GameMap(properties, tiles), "A", "B", new long[2][GameConstants.TEAM_MEMORY_LENGTH]);
+
+        Random random = new Random(0);
+        controllers = new RobotControllerImpl[robots];
+        for (int i = 0; i < robots; i++) {
+            MapLocation loc;
+            do {
+                loc = new MapLocation(random.nextInt(mapSize), random.nextInt(mapSize));
+            } while (world.getObject(loc, RobotLevel.ON_GROUND) != null);
+            InternalRobot robot = new InternalRobot(world, RobotType.SOLDIER, loc, random.nextBoolean() ? Team.A : Team.B, false);
+            controllers[i] = new RobotControllerImpl(world, robot);
+        }
+        // include some locations just off the map, like robots looking past the edge
+        locations = new MapLocation[4096];
+        for (int i = 0; i < locations.length; i++)
+            locations[i] = new MapLocation(random.nextInt(mapSize + 2) - 1, random.nextInt(mapSize + 2) - 1);
+    }
+
+    private void run(String name, int iterations, boolean canMove) {
+        // warm up, then time
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < iterations; i++) {
+                MapLocation loc = locations[i & (locations.length - 1)];
+                if (canMove ? world.canMove(RobotLevel.ON_GROUND, loc) : world.getObject(loc, RobotLevel.ON_GROUND) != null)
+                    found++;
+            }
+            long nanos = System.nanoTime() - start;
+            sink += found;
+            if (pass == 1)
+                System.out.println(String.format("%-10s %12.0f calls/s", name, iterations * 1e9 / nanos));
+        }
+    }
+
+    private void runSense(int iterations) {
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < iterations; i++) {
+                RobotControllerImpl rc = controllers[i % controllers.length];
+                found += rc.senseNearbyGameObjects(Robot.class, RobotType.SOLDIER.sensorRadiusSquared).length;
+            }
+            long nanos = System.nanoTime() - start;
+            sink += found;
+            if (pass == 1)
+                System.out.println(String.format("%-10s %12.0f calls/s", "sense", iterations * 1e9 / nanos));
+        }
+    }
+
+    public static void main(String[] args) {
+        int mapSize = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int robots = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20000000;
+
+        WorldBenchmark benchmark = new WorldBenchmark(mapSize, robots);
+        benchmark.run("getObject", iterations, false);
+        benchmark.run("canMove", iterations, true);
+        benchmark.runSense(iterations / 100);
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,15 @@
+package testplayer;
+
+import battlecode.common.RobotController;
+
+/**
+ * A player that the instrumenter should reject, because it synchronizes.
+ */
+public class IllegalPlayer {
+
+    public static void run(RobotController rc) {
+        synchronized (rc) {
+            rc.yield();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package testplayer;
+
+import battlecode.common.Clock;
+import battlecode.common.Direction;
+import battlecode.common.GameActionException;
+import battlecode.common.GameConstants;
+import battlecode.common.MapLocation;
+import battlecode.common.Robot;
+import battlecode.common.RobotController;
+import battlecode.common.RobotInfo;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.common.Upgrade;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A player that is never run, only instrumented.  It uses as many kinds of
+ * code that the instrumenter rewrites as it can: engine calls, hashCode,
+ * Random, the String functions that are replaced, debug methods, exception
+ * handlers and switches.
+ */
+public class RobotPlayer {
+
+    private static final Direction[] directions = Direction.values();
+    private static final Map<MapLocation, Integer> visits = new HashMap<MapLocation, Integer>();
+    private static int[][] heat = new int[GameConstants.MAP_MAX_WIDTH][GameConstants.MAP_MAX_HEIGHT];
+    private static long seen;
+    private static double power;
+
+    public static void run(RobotController rc) {
+        Random random = new Random();
+        while (true) {
+            try {
+                switch (rc.getType()) {
+                    case HQ:
+                        hq(rc);
+                        break;
+                    case SOLDIER:
+                        soldier(rc, random);
+                        break;
+                    default:
+                        debug_printType(rc.getType(), Clock.getRoundNum());
+                }
+            } catch (GameActionException e) {
+                e.printStackTrace();
+            } catch (Exception e) {
+                debug_print(e.getMessage());
+            } finally {
+                rc.yield();
+            }
+        }
+    }
+
+    private static void hq(RobotController rc) throws GameActionException {
+        if (!rc.isActive())
+            return;
+        if (rc.getTeamPower() > 100 || rc.hasUpgrade(Upgrade.FUSION)) {
+            Direction d = rc.getLocation().directionTo(rc.senseEnemyHQLocation());
+            for (int i = 0; i < 8; i++, d = d.rotateRight()) {
+                if (rc.canMove(d)) {
+                    rc.spawn(d);
+                    return;
+                }
+            }
+        }
+        rc.researchUpgrade(Upgrade.NUKE);
+    }
+
+    private static void soldier(RobotController rc, Random random) throws GameActionException {
+        MapLocation here = rc.getLocation();
+        Integer count = visits.get(here);
+        visits.put(here, count == null ? 1 : count + 1);
+        heat[here.x][here.y] += here.hashCode() & 3;
+        seen ^= ((long) here.x << 32) | here.y;
+        power += Math.random() * Math.sqrt(rc.getEnergon());
+
+        Robot[] enemies = rc.senseNearbyGameObjects(Robot.class, 14, rc.getTeam().opponent());
+        List<MapLocation> targets = new ArrayList<MapLocation>();
+        for (RobotInfo info : rc.senseRobotInfos(enemies)) {
+            if (info.type != RobotType.HQ)
+                targets.add(info.location);
+        }
+        if (!targets.isEmpty()) {
+            rc.attackSquare(targets.get(random.nextInt(targets.size())));
+            return;
+        }
+
+        String channel = Integer.toString(rc.readBroadcast(here.x * 100 + here.y));
+        if (channel.matches("[0-9]+") && channel.split("0").length > 2)
+            rc.setIndicatorString(0, channel.replaceAll("1", "one"));
+        byte[] bytes = channel.getBytes();
+        rc.setIndicatorString(1, new String(bytes) + System.identityHashCode(bytes));
+
+        int i = random.nextInt(directions.length);
+        switch (i) {
+            case 0:
+            case 2:
+                rc.layMine();
+                break;
+            case 1000:
+                rc.defuseMine(here.add(directions[0]));
+                break;
+            default:
+                if (rc.canMove(directions[i]))
+                    rc.move(directions[i]);
+        }
+        Object lock = new Object();
+        debug_print(lock.hashCode() + " " + Team.NEUTRAL + " " + Object.class);
+    }
+
+    private static void debug_print(String message) {
+        System.out.println(message);
+    }
+
+    private static void debug_printType(RobotType type, int round) {
+        System.out.println(type + " in round " + round);
+    }
+}